@@ -0,0 +1,148 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.ArtistsPager;
+import kaaes.spotify.webapi.android.models.Tracks;
+
+/**
+ * Compares parse time and allocations of the streaming {@code SpotifyJsonDecoder} against the Gson object graph plus
+ * model mapping, which Retrofit did for us before.
+ * <p/>
+ * The fixtures in {@code assets/fixtures} have the shape of real Spotify responses, including all the fields we never
+ * look at. The numbers are only logged (tag {@code SpotifyDecodingBenchmark}), the test itself just makes sure both
+ * paths produce the same items.
+ */
+public class SpotifyDecodingBenchmark extends InstrumentationTestCase {
+
+    private static final String TAG = SpotifyDecodingBenchmark.class.getSimpleName();
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 100;
+
+    private interface Decoder<T> {
+        List<T> decode(InputStream aBody) throws IOException;
+    }
+
+    private final SpotifyResultProcessor processor = new SpotifyResultProcessor();
+    private final Gson gson = new Gson();
+
+    private byte[] loadFixture(String aName) throws IOException {
+        InputStream in = getInstrumentation().getContext().getAssets().open("fixtures/" + aName);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private final Decoder<SpotifyItem.Artist> gsonArtists = new Decoder<SpotifyItem.Artist>() {
+        @Override
+        public List<SpotifyItem.Artist> decode(InputStream aBody) throws IOException {
+            return processor.toArtists(gson.fromJson(new InputStreamReader(aBody, "UTF-8"), ArtistsPager.class));
+        }
+    };
+
+    private final Decoder<SpotifyItem.Artist> streamingArtists = new Decoder<SpotifyItem.Artist>() {
+        @Override
+        public List<SpotifyItem.Artist> decode(InputStream aBody) throws IOException {
+            return processor.rankArtists(processor.decodeArtists(aBody));
+        }
+    };
+
+    private final Decoder<SpotifyItem.Track> gsonTracks = new Decoder<SpotifyItem.Track>() {
+        @Override
+        public List<SpotifyItem.Track> decode(InputStream aBody) throws IOException {
+            return processor.toTopTracks(gson.fromJson(new InputStreamReader(aBody, "UTF-8"), Tracks.class));
+        }
+    };
+
+    private final Decoder<SpotifyItem.Track> streamingTracks = new Decoder<SpotifyItem.Track>() {
+        @Override
+        public List<SpotifyItem.Track> decode(InputStream aBody) throws IOException {
+            return processor.rankTopTracks(processor.decodeTopTracks(aBody));
+        }
+    };
+
+    // runs the decoder over the fixture and logs time and allocations per response
+    private <T> List<T> measure(String aLabel, byte[] aFixture, Decoder<T> aDecoder) throws IOException {
+        List<T> result = null;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            result = aDecoder.decode(new ByteArrayInputStream(aFixture));
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            result = aDecoder.decode(new ByteArrayInputStream(aFixture));
+        }
+        long elapsedNs = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+
+        Log.i(TAG, String.format("%-28s %6d bytes json: %8.1f us, %7d objects, %8d bytes allocated per response",
+                aLabel, aFixture.length, elapsedNs / 1000.0 / ROUNDS,
+                Debug.getThreadAllocCount() / ROUNDS, Debug.getThreadAllocSize() / ROUNDS));
+        return result;
+    }
+
+    private void benchmarkArtists(String aFixture) throws IOException {
+        byte[] json = loadFixture(aFixture);
+        List<SpotifyItem.Artist> expected = measure("gson+mapping " + aFixture, json, gsonArtists);
+        List<SpotifyItem.Artist> actual = measure("streaming " + aFixture, json, streamingArtists);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            SpotifyItem.Artist e = expected.get(i);
+            SpotifyItem.Artist a = actual.get(i);
+            assertEquals(e.id, a.id);
+            assertEquals(e.name, a.name);
+            assertEquals(e.popularity, a.popularity);
+            assertEquals(e.imageUrl, a.imageUrl);
+        }
+    }
+
+    public void testSearchArtists20() throws IOException {
+        benchmarkArtists("search-artists-20.json");
+    }
+
+    public void testSearchArtists50() throws IOException {
+        benchmarkArtists("search-artists-50.json");
+    }
+
+    public void testTopTracks10() throws IOException {
+        byte[] json = loadFixture("top-tracks-10.json");
+        List<SpotifyItem.Track> expected = measure("gson+mapping top-tracks-10.json", json, gsonTracks);
+        List<SpotifyItem.Track> actual = measure("streaming top-tracks-10.json", json, streamingTracks);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            SpotifyItem.Track e = expected.get(i);
+            SpotifyItem.Track a = actual.get(i);
+            assertEquals(e.name, a.name);
+            assertEquals(e.popularity, a.popularity);
+            assertEquals(e.albumName, a.albumName);
+            assertEquals(e.trackUrl, a.trackUrl);
+            assertEquals(e.imageUrl, a.imageUrl);
+            assertEquals(e.largeImageUrl, a.largeImageUrl);
+            assertEquals(e.durationMs, a.durationMs);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load driver: simulated users search for artists and open their top tracks, through the real
+ * {@code SpotifyRequester} - HTTP stack, caches, coalescing of identical requests, retries - against the
+ * {@code SpotifyStandIn} with one network profile per test.
+ * <p/>
+ * Each user types a name one key at a time, the way {@code IncrementalArtistSearch} queries while typing, waits for
+ * the result, prefetches the top tracks of the first few artists and opens the first one. Popular names are picked
+ * more often and users overlap, so the same searches come up again while they are in flight and after they are
+ * cached. Throughput and latency until a fresh result (or the error) is delivered are only logged
+ * (tag {@code SpotifyLoadTest}), the tests make sure every request is answered.
+ */
+public class SpotifyLoadTest extends InstrumentationTestCase {
+
+    private static final String TAG = SpotifyLoadTest.class.getSimpleName();
+
+    private static final int USERS = 6;
+    private static final int SESSIONS_PER_USER = 5;
+    private static final long KEYSTROKE_MS = 120;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    // most popular first
+    private static final String[] NAMES = {"beatles", "beyonce", "coldplay", "radiohead", "madonna", "metallica",
+            "bjork", "blur", "muse", "moby"};
+
+    // the same limits as the app uses
+    private static final int CACHE_MAX_ENTRIES = 64;
+    private static final long CACHE_MAX_MEMORY_BYTES = 512 * 1024;
+    private static final long CACHE_MAX_DISK_BYTES = 2 * 1024 * 1024;
+
+    // waits for the first fresh result or the error, and records how long that took
+    private class TimedCallback<T extends SpotifyItem> implements SpotifyCallback<T> {
+        final long startNs = System.nanoTime();
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile List<T> items = Collections.emptyList();
+
+        @Override
+        public void onUpdate(List<T> aItems, boolean aStale) {
+            if (!aStale && latch.getCount() > 0) {
+                items = aItems;
+                done();
+            }
+        }
+
+        @Override
+        public void onError(SpotifyError aError) {
+            if (latch.getCount() > 0) {
+                errors.incrementAndGet();
+                done();
+            }
+        }
+
+        private void done() {
+            synchronized (latenciesMs) {
+                latenciesMs.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs));
+            }
+            latch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                timeouts.incrementAndGet();
+            }
+        }
+    }
+
+    private final List<Long> latenciesMs = new ArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger timeouts = new AtomicInteger();
+
+    private SpotifyStandIn standIn;
+    private SpotifyRequester requester;
+
+    private String loadFixture(String aName) throws IOException {
+        InputStream in = getInstrumentation().getContext().getAssets().open("fixtures/" + aName);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private void start(SpotifyStandIn.Profile aProfile) throws IOException {
+        standIn = new SpotifyStandIn(loadFixture("search-artists-50.json"), loadFixture("top-tracks-10.json"),
+                aProfile);
+        standIn.start();
+
+        File cacheDir = new File(getInstrumentation().getTargetContext().getCacheDir(), "load-test");
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        SpotifyHttpStack stack = new SpotifyHttpStack(new SpotifyHttpStack.Config().setBaseUrl(standIn.getBaseUrl()));
+        requester = new SpotifyRequester(SpotifyRequester.createService(stack.getClient(), stack.getBaseUrl()),
+                new SpotifyResultProcessor(), stack.getInteractiveExecutor(), stack.getBackgroundExecutor(),
+                Executors.newFixedThreadPool(2),
+                Executors.newSingleThreadExecutor(), // stands in for the main UI thread
+                new SpotifyResponseCache(CACHE_MAX_ENTRIES, CACHE_MAX_MEMORY_BYTES, cacheDir, CACHE_MAX_DISK_BYTES,
+                        TimeUnit.DAYS.toMillis(7)),
+                new SpotifyCatalog(null));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (standIn != null) {
+            standIn.shutdown();
+        }
+        super.tearDown();
+    }
+
+    private void runSession(Random aRandom) throws InterruptedException {
+        double pick = aRandom.nextDouble();
+        String name = NAMES[(int) (pick * pick * NAMES.length)]; // skewed towards the popular ones
+
+        // every keystroke cancels the search of the previous one
+        SpotifyRequest<SpotifyItem.Artist> search = null;
+        TimedCallback<SpotifyItem.Artist> result = null;
+        for (int length = 2; length <= name.length(); length++) {
+            if (search != null) {
+                search.cancel();
+            }
+            result = new TimedCallback<>();
+            search = requester.queryArtist(name.substring(0, length), result);
+            requests.incrementAndGet();
+            Thread.sleep(KEYSTROKE_MS);
+        }
+        result.await();
+        if (result.items.isEmpty()) {
+            return;
+        }
+
+        List<SpotifyRequest<SpotifyItem.Track>> prefetches = new ArrayList<>();
+        for (int i = 1; i < Math.min(4, result.items.size()); i++) {
+            prefetches.add(requester.prefetchTopTracks(result.items.get(i).id));
+        }
+        TimedCallback<SpotifyItem.Track> tracks = new TimedCallback<>();
+        requester.queryTopTracks(result.items.get(0).id, tracks);
+        requests.incrementAndGet();
+        tracks.await();
+        for (SpotifyRequest<SpotifyItem.Track> prefetch : prefetches) {
+            prefetch.cancel();
+        }
+    }
+
+    private long percentile(List<Long> aSorted, int aPercentile) {
+        if (aSorted.isEmpty()) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(aSorted.size() * aPercentile / 100.0);
+        return aSorted.get(Math.max(0, rank - 1));
+    }
+
+    private void runLoad(SpotifyStandIn.Profile aProfile) throws Exception {
+        start(aProfile);
+        List<Thread> users = new ArrayList<>();
+        final AtomicInteger failedUsers = new AtomicInteger();
+        long startNs = System.nanoTime();
+        for (int user = 0; user < USERS; user++) {
+            final Random random = new Random(user);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int session = 0; session < SESSIONS_PER_USER; session++) {
+                            runSession(random);
+                        }
+                    } catch (InterruptedException e) {
+                        failedUsers.incrementAndGet();
+                    }
+                }
+            }, "LoadTestUser-" + user);
+            users.add(thread);
+            thread.start();
+        }
+        for (Thread user : users) {
+            user.join();
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+
+        List<Long> sorted;
+        synchronized (latenciesMs) {
+            sorted = new ArrayList<>(latenciesMs);
+        }
+        Collections.sort(sorted);
+        long retries = requester.getMetrics().forEndpoint(SpotifyResponseCache.ENDPOINT_SEARCH_ARTISTS)
+                .getRetryCount() + requester.getMetrics().forEndpoint(SpotifyResponseCache.ENDPOINT_TOP_TRACKS)
+                .getRetryCount();
+        Log.i(TAG, String.format("%s: %d requests in %d ms (%.1f/s), %d answered: p50=%d p95=%d p99=%d max=%d ms, " +
+                        "%d errors, %d timeouts",
+                aProfile, requests.get(), elapsedMs, requests.get() * 1000.0 / elapsedMs, sorted.size(),
+                percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99), percentile(sorted, 100),
+                errors.get(), timeouts.get()));
+        Log.i(TAG, String.format("%s: network %d, coalesced %d, cancelled %d, retries %d, cache %s", aProfile,
+                requester.getIssuedNetworkCalls(), requester.getSavedNetworkCalls(),
+                requester.getCancelledNetworkCalls(), retries, requester.getCacheStats()));
+        Log.i(TAG, String.format("%s: stand-in served %d requests, %d failed, %d throttled", aProfile,
+                standIn.getRequestCount(), standIn.getErrorCount(), standIn.getThrottledCount()));
+        Log.d(TAG, requester.getMetrics().toString());
+
+        assertEquals(0, failedUsers.get());
+        assertEquals(0, timeouts.get());
+    }
+
+    public void testLocal() throws Exception {
+        runLoad(SpotifyStandIn.LOCAL);
+        assertEquals(0, errors.get());
+    }
+
+    public void testMobile3g() throws Exception {
+        runLoad(SpotifyStandIn.MOBILE_3G);
+        assertEquals(0, errors.get());
+    }
+
+    public void testFlaky() throws Exception {
+        runLoad(SpotifyStandIn.FLAKY);
+        assertTrue(standIn.getErrorCount() > 0);
+    }
+
+    public void testThrottled() throws Exception {
+        runLoad(SpotifyStandIn.THROTTLED);
+        assertTrue(standIn.getThrottledCount() > 0);
+    }
+}
@@ -0,0 +1,131 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import android.os.Parcel;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.Tracks;
+
+/**
+ * Measures the heap retained by a large set of cached top-track lists, with and without the {@code StringPool}.
+ * <p/>
+ * Without the pool every track holds its own copy of the album name and image URLs, which is what the Gson mapping
+ * still does. The numbers are only logged (tag {@code SpotifyMemoryBenchmark}), the test itself checks the sharing.
+ */
+public class SpotifyMemoryBenchmark extends InstrumentationTestCase {
+
+    private static final String TAG = SpotifyMemoryBenchmark.class.getSimpleName();
+
+    // about what the memory cache of the requester holds when it is full
+    private static final int CACHED_LISTS = 500;
+
+    private interface Loader {
+        List<SpotifyItem.Track> load() throws IOException;
+    }
+
+    private final SpotifyResultProcessor processor = new SpotifyResultProcessor();
+    private final Gson gson = new Gson();
+    private byte[] fixture;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        InputStream in = getInstrumentation().getContext().getAssets().open("fixtures/top-tracks-10.json");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            fixture = out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // keeps CACHED_LISTS lists alive and logs the heap they retain
+    private List<List<SpotifyItem.Track>> measure(String aLabel, Loader aLoader) throws IOException {
+        List<List<SpotifyItem.Track>> lists = new ArrayList<>(CACHED_LISTS);
+        long before = usedHeap();
+        for (int i = 0; i < CACHED_LISTS; i++) {
+            lists.add(aLoader.load());
+        }
+        long retained = usedHeap() - before;
+        Log.i(TAG, String.format("%-24s %4d lists: %9d bytes retained, %6d per list",
+                aLabel, CACHED_LISTS, retained, retained / CACHED_LISTS));
+        return lists;
+    }
+
+    private List<SpotifyItem.Track> parcelRoundTrip(List<SpotifyItem.Track> aTracks) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            new ParcelableItems(aTracks).writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return ParcelableItems.CREATOR.createFromParcel(parcel).getItems();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static void assertSharedAlbums(List<List<SpotifyItem.Track>> aLists) {
+        SpotifyItem.Track first = aLists.get(0).get(0);
+        for (List<SpotifyItem.Track> tracks : aLists) {
+            for (SpotifyItem.Track track : tracks) {
+                if (track.albumName.equals(first.albumName)) {
+                    assertSame(first.albumName, track.albumName);
+                    assertSame(first.imageUrl, track.imageUrl);
+                    assertSame(first.largeImageUrl, track.largeImageUrl);
+                }
+            }
+        }
+    }
+
+    public void testDecodedTopTracks() throws IOException {
+        measure("gson+mapping", new Loader() {
+            @Override
+            public List<SpotifyItem.Track> load() throws IOException {
+                return processor.toTopTracks(gson.fromJson(
+                        new InputStreamReader(new ByteArrayInputStream(fixture), "UTF-8"), Tracks.class));
+            }
+        });
+        List<List<SpotifyItem.Track>> pooled = measure("streaming+pool", new Loader() {
+            @Override
+            public List<SpotifyItem.Track> load() throws IOException {
+                return processor.rankTopTracks(processor.decodeTopTracks(new ByteArrayInputStream(fixture)));
+            }
+        });
+        assertSharedAlbums(pooled);
+    }
+
+    public void testParceledTopTracks() throws IOException {
+        final List<SpotifyItem.Track> tracks =
+                processor.rankTopTracks(processor.decodeTopTracks(new ByteArrayInputStream(fixture)));
+        List<List<SpotifyItem.Track>> pooled = measure("parcel+pool", new Loader() {
+            @Override
+            public List<SpotifyItem.Track> load() {
+                return parcelRoundTrip(tracks);
+            }
+        });
+        assertSharedAlbums(pooled);
+    }
+}
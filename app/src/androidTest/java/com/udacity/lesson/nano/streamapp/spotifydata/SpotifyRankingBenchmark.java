@@ -0,0 +1,93 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the bounded top-k selection of {@code SpotifyRanking} against sorting everything with
+ * {@code Collections.sort()} and taking a {@code subList()}, as we did before.
+ * <p/>
+ * The sizes range from what Spotify actually sends (10 top tracks out of 20, a page of 50 artists) to large local
+ * result sets. The numbers are only logged (tag {@code SpotifyRankingBenchmark}), the test itself makes sure both
+ * produce the same ranking.
+ */
+public class SpotifyRankingBenchmark extends InstrumentationTestCase {
+
+    private static final String TAG = SpotifyRankingBenchmark.class.getSimpleName();
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 100;
+
+    // popularity is 0..100, so there are plenty of ties to break by name
+    private static List<SpotifyItem.Artist> createArtists(int aCount) {
+        Random random = new Random(aCount);
+        List<SpotifyItem.Artist> artists = new ArrayList<>(aCount);
+        for (int i = 0; i < aCount; i++) {
+            artists.add(new SpotifyItem.Artist("artist " + random.nextInt(aCount), null, random.nextInt(101),
+                    "id" + i));
+        }
+        return artists;
+    }
+
+    private static List<SpotifyItem.Artist> sortAndTrim(List<SpotifyItem.Artist> aArtists, int aLimit) {
+        List<SpotifyItem.Artist> sorted = new ArrayList<>(aArtists);
+        Collections.sort(sorted, SpotifyRanking.ORDER);
+        return new ArrayList<>(sorted.subList(0, Math.min(aLimit, sorted.size())));
+    }
+
+    private void benchmark(int aCount, int aLimit) {
+        List<SpotifyItem.Artist> artists = createArtists(aCount);
+        List<SpotifyItem.Artist> expected = null;
+        List<SpotifyItem.Artist> actual = null;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            expected = sortAndTrim(artists, aLimit);
+            actual = SpotifyRanking.top(artists, aLimit);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            expected = sortAndTrim(artists, aLimit);
+        }
+        long sortNs = (System.nanoTime() - start) / ROUNDS;
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            actual = SpotifyRanking.top(artists, aLimit);
+        }
+        long topNs = (System.nanoTime() - start) / ROUNDS;
+
+        Log.i(TAG, String.format("top %4d of %6d: sort+subList %9.1f us, top-k %9.1f us",
+                aLimit, aCount, sortNs / 1000.0, topNs / 1000.0));
+        assertEquals(expected, actual);
+    }
+
+    public void testTopTracks() {
+        benchmark(20, 10);
+    }
+
+    public void testArtistPage() {
+        benchmark(50, 50);
+    }
+
+    public void testVisibleRowsOfLargeResult() {
+        benchmark(10000, 20);
+    }
+
+    public void testVeryLargeResult() {
+        benchmark(100000, 100);
+    }
+
+    public void testMergeRankedPages() {
+        List<SpotifyItem.Artist> first = SpotifyRanking.top(createArtists(50), 50);
+        List<SpotifyItem.Artist> second = SpotifyRanking.top(createArtists(40), 40);
+        List<SpotifyItem.Artist> all = new ArrayList<>(first);
+        all.addAll(second);
+
+        assertEquals(sortAndTrim(all, 60), SpotifyRanking.merge(Arrays.asList(first, second), 60));
+    }
+}
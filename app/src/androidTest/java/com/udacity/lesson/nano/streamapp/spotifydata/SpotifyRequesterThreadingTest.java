@@ -0,0 +1,245 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import android.os.Looper;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.models.AlbumSimple;
+import kaaes.spotify.webapi.android.models.Artist;
+import kaaes.spotify.webapi.android.models.ArtistsPager;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.Tracks;
+import retrofit.RetrofitError;
+import retrofit.android.MainThreadExecutor;
+import retrofit.client.Header;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+/**
+ * Makes sure the {@code SpotifyRequester} never runs the decoding and ranking on the main UI thread, while still
+ * delivering the results there.
+ */
+public class SpotifyRequesterThreadingTest extends InstrumentationTestCase {
+
+    // records on which thread the decoding and ranking code was executed
+    private static class RecordingProcessor extends SpotifyResultProcessor {
+        volatile int mappingCalls;
+        volatile boolean mappedOnMainThread;
+
+        private void record() {
+            mappingCalls++;
+            mappedOnMainThread |= Looper.myLooper() == Looper.getMainLooper();
+        }
+
+        private void recordDecoding() {
+            mappedOnMainThread |= Looper.myLooper() == Looper.getMainLooper();
+        }
+
+        @Override
+        List<SpotifyItem.Artist> decodeArtists(InputStream aBody) throws IOException {
+            recordDecoding();
+            return super.decodeArtists(aBody);
+        }
+
+        @Override
+        List<SpotifyItem.Track> decodeTopTracks(InputStream aBody) throws IOException {
+            recordDecoding();
+            return super.decodeTopTracks(aBody);
+        }
+
+        @Override
+        List<SpotifyItem.Artist> rankArtists(List<SpotifyItem.Artist> aArtists) {
+            record();
+            return super.rankArtists(aArtists);
+        }
+
+        @Override
+        List<SpotifyItem.Track> rankTopTracks(List<SpotifyItem.Track> aTracks) {
+            record();
+            return super.rankTopTracks(aTracks);
+        }
+    }
+
+    private static Response response(Object aPayload) {
+        byte[] json = new Gson().toJson(aPayload).getBytes();
+        return new Response("http://localhost", 200, "OK", Collections.<Header>emptyList(),
+                new TypedByteArray("application/json", json));
+    }
+
+    // answers the blocking requests right away with the prepared payloads
+    private static SpotifyStreamingService createFakeService(final ArtistsPager aArtists, final Tracks aTracks) {
+        return (SpotifyStreamingService) Proxy.newProxyInstance(SpotifyStreamingService.class.getClassLoader(),
+                new Class[]{SpotifyStreamingService.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("missing".equals(args[0])) {
+                            Response notFound = new Response("http://localhost", 404, "Not Found",
+                                    Collections.<Header>emptyList(), null);
+                            throw RetrofitError.httpError("http://localhost", notFound, null, null);
+                        } else if ("searchArtists".equals(method.getName())) {
+                            return response(aArtists);
+                        } else if ("getArtistTopTrack".equals(method.getName())) {
+                            return response(aTracks);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static Image image(int aSize) {
+        Image image = new Image();
+        image.width = aSize;
+        image.height = aSize;
+        image.url = "http://images/" + aSize;
+        return image;
+    }
+
+    private static ArtistsPager createArtists(int aCount) {
+        ArtistsPager pager = new ArtistsPager();
+        pager.artists = new Pager<>();
+        pager.artists.items = new ArrayList<>();
+        for (int i = 0; i < aCount; i++) {
+            Artist artist = new Artist();
+            artist.id = "id" + i;
+            artist.name = "artist " + i;
+            artist.popularity = i;
+            artist.images = new ArrayList<>();
+            Collections.addAll(artist.images, image(640), image(300), image(64));
+            pager.artists.items.add(artist);
+        }
+        return pager;
+    }
+
+    private static Tracks createTracks(int aCount) {
+        Tracks tracks = new Tracks();
+        tracks.tracks = new ArrayList<>();
+        for (int i = 0; i < aCount; i++) {
+            Track track = new Track();
+            track.name = "track " + i;
+            track.popularity = i;
+            track.preview_url = "http://preview/" + i;
+            track.album = new AlbumSimple();
+            track.album.name = "album";
+            track.album.images = new ArrayList<>();
+            Collections.addAll(track.album.images, image(640), image(200), image(64));
+            tracks.tracks.add(track);
+        }
+        return tracks;
+    }
+
+    private static class RecordingCallback<T extends SpotifyItem> implements SpotifyCallback<T> {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile List<T> items;
+        volatile SpotifyError error;
+        volatile boolean deliveredOnMainThread;
+
+        @Override
+        public void onUpdate(List<T> aItems, boolean aStale) {
+            items = aItems;
+            deliveredOnMainThread = Looper.myLooper() == Looper.getMainLooper();
+            latch.countDown();
+        }
+
+        @Override
+        public void onError(SpotifyError aError) {
+            error = aError;
+            deliveredOnMainThread = Looper.myLooper() == Looper.getMainLooper();
+            latch.countDown();
+        }
+    }
+
+    private RecordingProcessor processor;
+    private SpotifyRequester requester;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        processor = new RecordingProcessor();
+        // no real network threads needed, the fake service answers right away
+        Executor directExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        requester = new SpotifyRequester(createFakeService(createArtists(50), createTracks(20)), processor,
+                directExecutor, directExecutor, Executors.newSingleThreadExecutor(), new MainThreadExecutor(),
+                new SpotifyResponseCache(8, 64 * 1024, null, 0, 0), new SpotifyCatalog(null));
+    }
+
+    public void testArtistsAreProcessedOffTheMainThread() throws Exception {
+        final RecordingCallback<SpotifyItem.Artist> callback = new RecordingCallback<>();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                requester.queryArtist("artist", callback);
+            }
+        });
+        assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, processor.mappingCalls);
+        assertFalse(processor.mappedOnMainThread);
+        assertTrue(callback.deliveredOnMainThread);
+        assertEquals(50, callback.items.size());
+        assertEquals(49, callback.items.get(0).popularity);
+        assertEquals("http://images/64", callback.items.get(0).imageUrl);
+
+        SpotifyMetrics.EndpointMetrics metrics =
+                requester.getMetrics().forEndpoint(SpotifyResponseCache.ENDPOINT_SEARCH_ARTISTS);
+        assertEquals(1, metrics.processUs.getCount());
+        assertEquals(1, metrics.responseBytes.getCount());
+        assertTrue(metrics.responseBytes.getMax() > 0);
+    }
+
+    public void testTopTracksAreProcessedOffTheMainThread() throws Exception {
+        final RecordingCallback<SpotifyItem.Track> callback = new RecordingCallback<>();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                requester.queryTopTracks("id0", callback);
+            }
+        });
+        assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, processor.mappingCalls);
+        assertFalse(processor.mappedOnMainThread);
+        assertTrue(callback.deliveredOnMainThread);
+        assertEquals(SpotifyResultProcessor.MAX_TOP_TRACKS, callback.items.size());
+        assertEquals("http://images/200", callback.items.get(0).imageUrl);
+        assertEquals("http://images/640", callback.items.get(0).largeImageUrl);
+    }
+
+    public void testFailuresAreReportedAsErrors() throws Exception {
+        final RecordingCallback<SpotifyItem.Track> callback = new RecordingCallback<>();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                requester.queryTopTracks("missing", callback);
+            }
+        });
+        assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+
+        assertNull(callback.items);
+        assertEquals(SpotifyError.Kind.HTTP, callback.error.kind);
+        assertEquals(404, callback.error.status);
+        assertTrue(callback.deliveredOnMainThread);
+        assertEquals(1, requester.getMetrics().forEndpoint(SpotifyResponseCache.ENDPOINT_TOP_TRACKS)
+                .getErrorCount(SpotifyError.Kind.HTTP));
+    }
+}
@@ -0,0 +1,218 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import android.net.Uri;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the Spotify Web API, serving the recorded responses of {@code assets/fixtures}:
+ * <ul>
+ * <li>{@code /v1/search?type=artist}, the requested page of the recorded 50 artists</li>
+ * <li>{@code /v1/artists/{id}/top-tracks}, the recorded tracks. Their {@code preview_url} points back here</li>
+ * <li>{@code /audio/{id}}, a preview sized payload. It is not decodable audio, it only costs the bandwidth</li>
+ * </ul>
+ * A {@link Profile} adds latency, limits the bandwidth, and fails or throttles (429) a share of the requests, so the
+ * {@code SpotifyRequester} can be measured end to end against a known network. Point it here with
+ * {@code SpotifyHttpStack.Config.setBaseUrl(getBaseUrl())}.
+ */
+class SpotifyStandIn {
+
+    /**
+     * The network as seen by the client, the defaults are a fast and reliable local one
+     */
+    static class Profile {
+        final String name;
+        long latencyMs;
+        long jitterMs;
+        int bytesPerSecond; // 0 is unlimited
+        double errorRate;
+        double throttleRate;
+        int retryAfterSeconds = 1;
+
+        Profile(String aName) {
+            name = aName;
+        }
+
+        Profile setLatency(long aLatencyMs, long aJitterMs) {
+            latencyMs = aLatencyMs;
+            jitterMs = aJitterMs;
+            return this;
+        }
+
+        Profile setBandwidth(int aBytesPerSecond) {
+            bytesPerSecond = aBytesPerSecond;
+            return this;
+        }
+
+        // the share of requests failing with 503
+        Profile setErrorRate(double aErrorRate) {
+            errorRate = aErrorRate;
+            return this;
+        }
+
+        // the share of requests answered with 429, asking to come back after aRetryAfterSeconds
+        Profile setThrottleRate(double aThrottleRate, int aRetryAfterSeconds) {
+            throttleRate = aThrottleRate;
+            retryAfterSeconds = aRetryAfterSeconds;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static final Profile LOCAL = new Profile("local");
+    // a mediocre mobile connection
+    static final Profile MOBILE_3G = new Profile("3g").setLatency(300, 100).setBandwidth(96 * 1024);
+    static final Profile FLAKY = new Profile("flaky").setLatency(100, 50).setErrorRate(0.1);
+    static final Profile THROTTLED = new Profile("throttled").setLatency(50, 20).setThrottleRate(0.2, 1);
+
+    // 30s at 128 kbit/s, what a Spotify preview weighs
+    private static final int AUDIO_BYTES = 30 * 128 * 1024 / 8;
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final JsonArray mArtists;
+    private final String mTopTracks;
+    private final Profile mProfile;
+    private final Random mRandom = new Random(42); // the same failures in every run
+
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicInteger mErrors = new AtomicInteger();
+    private final AtomicInteger mThrottled = new AtomicInteger();
+
+    /**
+     * @param aSearchArtists the recorded {@code /v1/search?type=artist} response
+     * @param aTopTracks     the recorded {@code /v1/artists/{id}/top-tracks} response
+     */
+    SpotifyStandIn(String aSearchArtists, String aTopTracks, Profile aProfile) {
+        mArtists = new JsonParser().parse(aSearchArtists).getAsJsonObject()
+                .getAsJsonObject("artists").getAsJsonArray("items");
+        mTopTracks = aTopTracks;
+        mProfile = aProfile;
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest aRequest) throws InterruptedException {
+                return SpotifyStandIn.this.dispatch(aRequest);
+            }
+        });
+    }
+
+    void start() throws IOException {
+        mServer.play();
+    }
+
+    void shutdown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /**
+     * @return the base URL of the API, to pass to {@code SpotifyHttpStack.Config.setBaseUrl()}
+     */
+    String getBaseUrl() {
+        return mServer.getUrl("/v1").toString();
+    }
+
+    int getRequestCount() {
+        return mRequests.get();
+    }
+
+    int getErrorCount() {
+        return mErrors.get();
+    }
+
+    int getThrottledCount() {
+        return mThrottled.get();
+    }
+
+    // runs on a thread of the server, one per connection
+    private MockResponse dispatch(RecordedRequest aRequest) throws InterruptedException {
+        mRequests.incrementAndGet();
+        double failure;
+        long latencyMs = mProfile.latencyMs;
+        synchronized (mRandom) {
+            failure = mRandom.nextDouble();
+            if (mProfile.jitterMs > 0) {
+                latencyMs += (long) ((mRandom.nextDouble() * 2 - 1) * mProfile.jitterMs);
+            }
+        }
+        Thread.sleep(Math.max(0, latencyMs));
+
+        if (failure < mProfile.throttleRate) {
+            mThrottled.incrementAndGet();
+            return new MockResponse().setResponseCode(429)
+                    .setHeader("Retry-After", mProfile.retryAfterSeconds)
+                    .setBody("{\"error\":{\"status\":429,\"message\":\"API rate limit exceeded\"}}");
+        }
+        if (failure < mProfile.throttleRate + mProfile.errorRate) {
+            mErrors.incrementAndGet();
+            return new MockResponse().setResponseCode(503)
+                    .setBody("{\"error\":{\"status\":503,\"message\":\"Service unavailable\"}}");
+        }
+
+        Uri uri = Uri.parse(aRequest.getPath());
+        String path = uri.getPath();
+        MockResponse response;
+        if (path.equals("/v1/search")) {
+            response = json(searchArtists(uri));
+        } else if (path.startsWith("/v1/artists/") && path.endsWith("/top-tracks")) {
+            response = json(mTopTracks.replace("https://p.scdn.co/mp3-preview/",
+                    mServer.getUrl("/audio/").toString()));
+        } else if (path.startsWith("/audio/")) {
+            response = new MockResponse().setHeader("Content-Type", "audio/mpeg").setBody(new byte[AUDIO_BYTES]);
+        } else {
+            response = json("{\"error\":{\"status\":404,\"message\":\"Not found\"}}").setResponseCode(404);
+        }
+        if (mProfile.bytesPerSecond > 0) {
+            // in 100ms steps, so short responses are not delayed by a whole second
+            response.throttleBody(mProfile.bytesPerSecond / 10, 100, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    // the page of the recorded artists, with the ids of the query so that every query gets its own artists
+    private String searchArtists(Uri aUri) {
+        String query = aUri.getQueryParameter("q");
+        int offset = parseInt(aUri.getQueryParameter("offset"), 0);
+        int limit = parseInt(aUri.getQueryParameter("limit"), 20);
+
+        JsonArray items = new JsonArray();
+        for (int i = offset; i < Math.min(offset + limit, mArtists.size()); i++) {
+            JsonObject artist = new JsonParser().parse(mArtists.get(i).toString()).getAsJsonObject();
+            artist.addProperty("id", query + "-" + artist.get("id").getAsString());
+            items.add(artist);
+        }
+        JsonObject page = new JsonObject();
+        page.add("items", items);
+        page.addProperty("limit", limit);
+        page.addProperty("offset", offset);
+        page.addProperty("total", mArtists.size());
+        JsonObject response = new JsonObject();
+        response.add("artists", page);
+        return response.toString();
+    }
+
+    private static int parseInt(String aValue, int aDefault) {
+        try {
+            return aValue != null ? Integer.parseInt(aValue) : aDefault;
+        } catch (NumberFormatException e) {
+            return aDefault;
+        }
+    }
+
+    private static MockResponse json(String aBody) {
+        return new MockResponse().setHeader("Content-Type", "application/json; charset=utf-8").setBody(aBody);
+    }
+}
@@ -0,0 +1,204 @@
+package com.udacity.lesson.nano.streamapp;
+
+import android.widget.AbsListView;
+import android.widget.ArrayAdapter;
+
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyCallback;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyError;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItem;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyRequest;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyRequester;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pages through the results of an artist search as the user scrolls the list.
+ * <p/>
+ * The next page is requested as soon as the user comes within a page of the end of the list, so usually it is
+ * already there when the end is reached. Each page is appended as it is, the artists already on screen keep their
+ * position.
+ * <p/>
+ * Only a few pages around the visible rows are held in memory. The rows of pages further away are replaced by a
+ * shared placeholder, and the page is requested again once the user scrolls back - which is answered by the cache of
+ * the {@code SpotifyRequester} most of the time.
+ * <p/>
+ * If a page fails to load, no further page is requested until the user starts scrolling again.
+ * <p/>
+ * Must only be used from the main UI thread.
+ */
+class ArtistResultPages implements AbsListView.OnScrollListener {
+
+    // pages kept around the visible rows, everything else is dropped
+    private static final int MAX_RESIDENT_PAGES = 5;
+
+    private final SpotifyRequester mRequester;
+    private final ArrayAdapter<SpotifyItem.Artist> mAdapter;
+    private final List<SpotifyItem.Artist> mRows; // the list backing mAdapter
+    private final SpotifyItem.Artist mPlaceholder;
+    private final int mPageSize;
+
+    private String mQuery; // null, if the rows are not pageable, e.g. locally filtered
+    private int mPageCount;
+    private boolean mEndReached;
+    private boolean mSuspended; // a page has failed to load
+    private final List<Boolean> mResident = new ArrayList<>();
+    private final Map<Integer, SpotifyRequest<SpotifyItem.Artist>> mPending = new HashMap<>();
+
+    /**
+     * @param aRows the list, that was passed to the constructor of {@code aAdapter}
+     */
+    ArtistResultPages(SpotifyRequester aRequester, ArrayAdapter<SpotifyItem.Artist> aAdapter,
+                      List<SpotifyItem.Artist> aRows, SpotifyItem.Artist aPlaceholder) {
+        mRequester = aRequester;
+        mAdapter = aAdapter;
+        mRows = aRows;
+        mPlaceholder = aPlaceholder;
+        mPageSize = SpotifyRequester.ARTIST_PAGE_SIZE;
+    }
+
+    /**
+     * @return true, if the row is a dropped artist, that is about to be loaded again
+     */
+    boolean isPlaceholder(SpotifyItem.Artist aArtist) {
+        return aArtist == mPlaceholder;
+    }
+
+    /**
+     * Replaces the rows with the first page of the results for {@code aQuery}
+     */
+    void showFirstPage(String aQuery, List<SpotifyItem.Artist> aItems) {
+        reset(aQuery, aItems);
+        mEndReached = aItems.size() < mPageSize;
+    }
+
+    /**
+     * Replaces the rows with a list, that is not paged any further, e.g. locally filtered results
+     */
+    void showUnpaged(List<SpotifyItem.Artist> aItems) {
+        reset(null, aItems);
+        mEndReached = true;
+    }
+
+    /**
+     * Stops loading pages, e.g. because the View is being destroyed
+     */
+    void cancel() {
+        for (SpotifyRequest<SpotifyItem.Artist> request : mPending.values()) {
+            request.cancel();
+        }
+        mPending.clear();
+    }
+
+    private void reset(String aQuery, List<SpotifyItem.Artist> aItems) {
+        cancel();
+        mQuery = aQuery;
+        mSuspended = false;
+        mPageCount = 1;
+        mResident.clear();
+        mResident.add(true);
+        mRows.clear();
+        mRows.addAll(aItems);
+        mAdapter.notifyDataSetChanged();
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        if (scrollState == SCROLL_STATE_TOUCH_SCROLL) {
+            mSuspended = false; // the user tries again
+        }
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if (mQuery == null || mSuspended || visibleItemCount == 0) {
+            return;
+        }
+        // the next page, before the user reaches the end
+        if (!mEndReached && firstVisibleItem + visibleItemCount >= mRows.size() - mPageSize) {
+            requestPage(mPageCount);
+        }
+        int firstPage = firstVisibleItem / mPageSize;
+        int lastPage = Math.min((firstVisibleItem + visibleItemCount - 1) / mPageSize, mPageCount - 1);
+        for (int page = firstPage; page <= lastPage; page++) {
+            if (!mResident.get(page)) {
+                requestPage(page);
+            }
+        }
+        dropFarPages(firstPage, lastPage);
+    }
+
+    private void requestPage(final int aPage) {
+        if (mPending.containsKey(aPage)) {
+            return;
+        }
+        final String query = mQuery;
+        SpotifyRequest<SpotifyItem.Artist> request = mRequester.queryArtistPage(query, aPage * mPageSize, mPageSize,
+                new SpotifyCallback<SpotifyItem.Artist>() {
+                    @Override
+                    public void onUpdate(List<SpotifyItem.Artist> aItems, boolean aStale) {
+                        if (!query.equals(mQuery)) {
+                            return; // a new search has started in the meantime
+                        }
+                        if (!aStale) { // otherwise the fresh page is still to come
+                            mPending.remove(aPage);
+                        }
+                        onPage(aPage, aItems);
+                    }
+
+                    @Override
+                    public void onError(SpotifyError aError) {
+                        if (!query.equals(mQuery)) {
+                            return;
+                        }
+                        mPending.remove(aPage);
+                        mSuspended = true;
+                    }
+                });
+        // results are always posted, even from the cache, so this is in place before the callback runs
+        mPending.put(aPage, request);
+    }
+
+    private void onPage(int aPage, List<SpotifyItem.Artist> aItems) {
+        if (aPage == mPageCount) { // appending the next page
+            mEndReached = aItems.size() < mPageSize;
+            if (aItems.isEmpty()) {
+                return;
+            }
+            mRows.addAll(aItems);
+            mResident.add(true);
+            mPageCount++;
+        } else if (aPage < mPageCount) { // reloading a dropped page, or refreshing a stale one
+            int start = aPage * mPageSize;
+            int end = Math.min(start + mPageSize, mRows.size());
+            if (aItems.size() < end - start) {
+                return; // the results have changed since, better leave the placeholders than shifting rows
+            }
+            for (int i = start; i < end; i++) {
+                mRows.set(i, aItems.get(i - start));
+            }
+            mResident.set(aPage, true);
+        } else {
+            return;
+        }
+        mAdapter.notifyDataSetChanged();
+    }
+
+    // keeps MAX_RESIDENT_PAGES pages centered on the visible ones. the dropped rows are off screen and the count
+    // does not change, so there is no need to notify the adapter
+    private void dropFarPages(int aFirstVisiblePage, int aLastVisiblePage) {
+        int keepFrom = aFirstVisiblePage - (MAX_RESIDENT_PAGES - 1) / 2;
+        int keepTo = Math.max(aLastVisiblePage, keepFrom + MAX_RESIDENT_PAGES - 1);
+        for (int page = 0; page < mPageCount; page++) {
+            if ((page < keepFrom || page > keepTo) && mResident.get(page)) {
+                int start = page * mPageSize;
+                int end = Math.min(start + mPageSize, mRows.size());
+                Collections.fill(mRows.subList(start, end), mPlaceholder);
+                mResident.set(page, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.udacity.lesson.nano.streamapp;
+
+import android.graphics.Bitmap;
+
+import com.squareup.picasso.Cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory cache of decoded bitmaps for Picasso, like its {@code LruCache}, but its size can be changed while in use,
+ * so the {@code MemoryBudget} can shrink it step by step.
+ */
+class BitmapLruCache implements Cache, MemoryBudget.Trimmable {
+
+    private final int mFullSize;
+
+    // access ordered, so iterating starts at the least recently used entry
+    private final LinkedHashMap<String, Bitmap> mBitmaps = new LinkedHashMap<>(16, 0.75f, true);
+    private int mSize;
+    private int mMaxSize;
+
+    /**
+     * @param aFullSize bytes of the bitmaps kept, unless memory runs low
+     */
+    BitmapLruCache(int aFullSize) {
+        mFullSize = aFullSize;
+        mMaxSize = aFullSize;
+    }
+
+    @Override
+    public synchronized Bitmap get(String key) {
+        return mBitmaps.get(key);
+    }
+
+    @Override
+    public synchronized void set(String key, Bitmap bitmap) {
+        Bitmap old = mBitmaps.put(key, bitmap);
+        if (old != null) {
+            mSize -= old.getByteCount();
+        }
+        mSize += bitmap.getByteCount();
+        trimToSize(mMaxSize);
+    }
+
+    @Override
+    public synchronized int size() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    @Override
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    // the keys of Picasso start with the uri, followed by a newline and the transformations
+    @Override
+    public synchronized void clearKeyUri(String keyPrefix) {
+        Iterator<Map.Entry<String, Bitmap>> it = mBitmaps.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Bitmap> entry = it.next();
+            String key = entry.getKey();
+            if (key.startsWith(keyPrefix) && key.indexOf('\n') == keyPrefix.length()) {
+                it.remove();
+                mSize -= entry.getValue().getByteCount();
+            }
+        }
+    }
+
+    @Override
+    public synchronized long getSizeBytes() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized long getMaxSizeBytes() {
+        return mMaxSize;
+    }
+
+    @Override
+    public synchronized void trimTo(double aFraction) {
+        mMaxSize = (int) (mFullSize * aFraction);
+        trimToSize(mMaxSize);
+    }
+
+    private void trimToSize(int aMaxSize) {
+        Iterator<Bitmap> it = mBitmaps.values().iterator();
+        while (mSize > aMaxSize && it.hasNext()) {
+            mSize -= it.next().getByteCount();
+            it.remove();
+        }
+    }
+}
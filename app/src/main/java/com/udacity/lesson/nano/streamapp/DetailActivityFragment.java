@@ -2,7 +2,6 @@ package com.udacity.lesson.nano.streamapp;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.Parcelable;
 import android.support.v4.app.Fragment;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -13,8 +12,11 @@ import android.widget.ListView;
 import android.widget.Toast;
 
 import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyCallback;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyError;
 import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItem;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyRequest;
 import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyRequester;
+import com.udacity.lesson.nano.streamapp.spotifydata.TrackLists;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -22,6 +24,7 @@ import java.util.List;
 import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.ARTIST_ID;
 import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.ARTIST_NAME;
 import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.TOP_TRACKS;
+import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.TOP_TRACKS_KEY;
 import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.TRACK_NUMBER;
 
 public class DetailActivityFragment extends Fragment implements SpotifyCallback<SpotifyItem.Track> {
@@ -31,6 +34,13 @@ public class DetailActivityFragment extends Fragment implements SpotifyCallback<
     private SpotifyItemAdapter.Track mSpotifyAdapter;
 
     private ListView mListView;
+    private ListImageScheduler mImages;
+    private SpotifyRequest<SpotifyItem.Track> mRequest; // the pending query of the top tracks, or null
+
+    // the shown tracks and their key in TrackLists, null until we have some
+    private List<SpotifyItem.Track> mTracks;
+    private String mTracksKey;
+    private String mArtistId;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -38,10 +48,13 @@ public class DetailActivityFragment extends Fragment implements SpotifyCallback<
         final List<SpotifyItem.Track> trackList = new ArrayList<>();
 
         if (savedInstanceState != null) {
-            ArrayList<SpotifyItem.Track> items = savedInstanceState.getParcelableArrayList(TOP_TRACKS);
-            if (items != null || !items.isEmpty()) {
+            String key = savedInstanceState.getString(TOP_TRACKS_KEY);
+            List<SpotifyItem.Track> items = TrackLists.restore(key, savedInstanceState.getByteArray(TOP_TRACKS));
+            if (items != null && !items.isEmpty()) {
                 Log.d(LOG_TAG, "restoring " + track(items) + " from local cache");
                 trackList.addAll(items);
+                mTracks = items;
+                mTracksKey = key;
             }
         }
 
@@ -67,9 +80,10 @@ public class DetailActivityFragment extends Fragment implements SpotifyCallback<
 
         final String artistId = artistIdParam;
         final String artistName = artistNameParam;
+        mArtistId = artistId;
 
         if (trackList.isEmpty()) { // if we have nothing in the track list, lets request it from the server
-            SpotifyRequester.getInstance().queryTopTracks(artistIdParam, this);
+            mRequest = SpotifyRequester.getInstance(getActivity()).queryTopTracks(artistIdParam, this);
         }
 
         View rootView = inflater.inflate(R.layout.fragment_detail, container, false);
@@ -77,12 +91,12 @@ public class DetailActivityFragment extends Fragment implements SpotifyCallback<
         mListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                ArrayList<Parcelable> items = asParcelable();
                 boolean twoPaneMode = getResources().getBoolean(R.bool.has_two_panes);
                 if( twoPaneMode ) { // launch directly
                     PlayerActivityFragment fragment = new PlayerActivityFragment();
                     Bundle bundle = new Bundle();
-                    bundle.putParcelableArrayList(TOP_TRACKS, items);
+                    bundle.putString(TOP_TRACKS_KEY, mTracksKey);
+                    bundle.putByteArray(TOP_TRACKS, TrackLists.encode(mTracks)); // if the key got evicted
                     bundle.putString(ARTIST_NAME, artistName);
                     bundle.putString(ARTIST_ID, artistId);
                     bundle.putInt(TRACK_NUMBER, position);
@@ -90,7 +104,8 @@ public class DetailActivityFragment extends Fragment implements SpotifyCallback<
                     fragment.show(getActivity().getFragmentManager(), "player");
                 } else { // launch via intent
                     Intent intent = new Intent(getActivity(), PlayerActivity.class);
-                    intent.putParcelableArrayListExtra(TOP_TRACKS, items);
+                    intent.putExtra(TOP_TRACKS_KEY, mTracksKey);
+                    intent.putExtra(TOP_TRACKS, TrackLists.encode(mTracks)); // if the key got evicted
                     intent.putExtra(ARTIST_NAME, artistName);
                     intent.putExtra(ARTIST_ID, artistId);
                     intent.putExtra(TRACK_NUMBER, position);
@@ -99,30 +114,29 @@ public class DetailActivityFragment extends Fragment implements SpotifyCallback<
             }
         });
         mListView.setAdapter(mSpotifyAdapter);
+        mImages = ListImageScheduler.attach(mListView, mSpotifyAdapter, null);
         return rootView;
     }
 
-    // convert the adapter elements to parcelable
-    private ArrayList<Parcelable> asParcelable() {
-        // why am I getting an error trying to put the list directly?
-        // outState.putParcelableList(TOP_TRACKS, mSpotifyAdapter);
-
-        // well. dont bother, just make a new list using an old-school loop:
-        ArrayList<Parcelable> items = new ArrayList<>();
-        for (int i = 0; i < mSpotifyAdapter.getCount(); i++) {
-            items.add(mSpotifyAdapter.getItem(i));
+    @Override
+    public void onDestroyView() {
+        if (mRequest != null) { // it may still be retrying, its results have no view to go to anymore
+            mRequest.cancel();
+            mRequest = null;
         }
-        return items;
+        mImages.cancel();
+        super.onDestroyView();
     }
 
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
 
-        if (mSpotifyAdapter.getCount() > 0) {
-            ArrayList<Parcelable> items = asParcelable();
-            outState.putParcelableArrayList(TOP_TRACKS, items);
-            Log.d(LOG_TAG, "saving " + track(items) + " to local cache");
+        if (mTracksKey != null) {
+            // the key is enough while the process lives, the encoded tracks are the fallback if it does not
+            outState.putString(TOP_TRACKS_KEY, mTracksKey);
+            outState.putByteArray(TOP_TRACKS, TrackLists.encode(mTracks));
+            Log.d(LOG_TAG, "saving " + track(mTracks) + " to local cache");
         }
     }
 
@@ -131,19 +145,34 @@ public class DetailActivityFragment extends Fragment implements SpotifyCallback<
     }
 
     @Override
-    public void onUpdate(List<SpotifyItem.Track> aItems) {
+    public void onUpdate(List<SpotifyItem.Track> aItems, boolean aStale) {
+        if (getActivity() == null) {
+            return; // detached in the meantime
+        }
         if (aItems.isEmpty()) {
             // learnt during "Project 0 - My App Portfolio":
             // display a toast and "outsource" strings in the according XML file
-            Toast toast = Toast.makeText(getView().getContext(),
+            Toast toast = Toast.makeText(getActivity(),
                     R.string.no_top_tracks_found_toast, Toast.LENGTH_SHORT);
             toast.show();
             return;
         }
 
+        mTracks = aItems;
+        mTracksKey = TrackLists.put(mArtistId, aItems);
         mListView.smoothScrollToPosition(0);
         mSpotifyAdapter.clear();
         mSpotifyAdapter.addAll(aItems);
         mSpotifyAdapter.notifyDataSetChanged(); // notify only once
     }
+
+    @Override
+    public void onError(SpotifyError aError) {
+        if (getActivity() == null) {
+            return; // detached in the meantime
+        }
+        Toast toast = Toast.makeText(getActivity(),
+                R.string.top_tracks_failed_toast, Toast.LENGTH_SHORT);
+        toast.show();
+    }
 }
\ No newline at end of file
@@ -1,10 +1,23 @@
 package com.udacity.lesson.nano.streamapp;
 
+import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Rect;
-import android.view.View;
+import android.graphics.drawable.Drawable;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.telephony.TelephonyManager;
+import android.view.ViewGroup;
 import android.widget.ImageView;
 
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.NetworkPolicy;
 import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+import com.squareup.picasso.Target;
+import com.udacity.lesson.nano.streamapp.spotifydata.AlbumImages;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItem;
 
 /**
  * Simple helper class to interface with the Picasso library.
@@ -13,40 +26,211 @@ public class ImageLoaderUtils {
 
     private final static int DEFAULT_THUMBNAIL_ID = R.mipmap.ic_launcher;
 
+    // target sizes are rounded up to a multiple of this. views of about the same size then ask for the same bitmap,
+    // which Picasso decodes once and keeps in its memory cache for all of them
+    private final static int SIZE_QUANTUM_PX = 32;
+
+    /**
+     * @return the size in pixels {@code aView} is displayed with: the size of its layout, if that is fixed (these are
+     * already converted to pixels for the density of the screen), otherwise its measured size. 0 if it has neither
+     * yet.
+     */
+    public static int getTargetSizePx(ImageView aView) {
+        ViewGroup.LayoutParams params = aView.getLayoutParams();
+        int width = params != null && params.width > 0 ? params.width : aView.getWidth();
+        int height = params != null && params.height > 0 ? params.height : aView.getHeight();
+        return Math.max(width, height);
+    }
+
+    // rounded up to the next multiple of SIZE_QUANTUM_PX
+    static int quantize(int aSizePx) {
+        return (aSizePx + SIZE_QUANTUM_PX - 1) / SIZE_QUANTUM_PX * SIZE_QUANTUM_PX;
+    }
+
     /**
-     * Displays an image in the ImageView with {@code aViewId} by first loading it from the provided URL and then
-     * asynchronously setting it.
-     * If no URL is passed in, the ImageView displays a default image.
+     * Displays an image in {@code aView} by first loading it from the provided URL and then asynchronously setting it.
+     * The image is decoded at the size the view is displayed with, never larger than the source. If no URL is passed
+     * in, the ImageView displays a default image.
      *
-     * @param aView   root view for looking up aViewId
-     * @param aViewId ID of a View that is expected to be an {@code ImageView}
-     * @param aUrl    URL to load the image from or null
+     * @param aUrl URL to load the image from or null, ideally the variant picked for {@link #getTargetSizePx}
      */
-    public static void showInImageView(View aView, int aViewId, String aUrl) {
-        ImageView imageView = (ImageView) aView.findViewById(aViewId);
-        if (aUrl != null) {
-            // I still havent found a good way to let the layouting decide which size to use.
-            // Is this supposed to be configured in one of the XML files?
-            // with the centerInside() method at least the aspect ratio is kept
-            // resize to 100x100 ensures the ImageView is set to reasonable dimensions
-            // but 100x100 seems not ok for me, if you think about different devices with different screen resolutions
-            Picasso.with(aView.getContext()).load(aUrl).resize(100, 100).centerInside().into(imageView);
+    public static void showInImageView(ImageView aView, String aUrl) {
+        showInImageView(aView, aUrl, null);
+    }
+
+    /**
+     * Same as {@link #showInImageView(ImageView, String)}, with the load tagged by {@code aTag}, so it can be paused
+     * and cancelled together with the others of the same tag
+     */
+    public static void showInImageView(ImageView aView, String aUrl, Object aTag) {
+        Picasso picasso = ImagePipeline.with(aView.getContext());
+        if (aUrl == null) {
+            picasso.cancelRequest(aView); // a recycled row may still be loading another one
+            aView.setImageResource(DEFAULT_THUMBNAIL_ID);
+            return;
+        }
+        int sizePx = getTargetSizePx(aView);
+        RequestCreator request;
+        if (sizePx > 0) {
+            request = createThumbnailRequest(picasso, aUrl, sizePx);
         } else {
-            imageView.setImageResource(DEFAULT_THUMBNAIL_ID);
+            // waits until the view is laid out
+            request = picasso.load(aUrl).config(Bitmap.Config.RGB_565).fit().centerInside();
+        }
+        if (aTag != null) {
+            request.tag(aTag);
         }
+        request.into(aView);
     }
 
-    public static void showLargeImageView(ImageView aView, String aUrl) {
+    /**
+     * @return the request for a thumbnail displayed at {@code aSizePx}. Fetching it ahead of time with the same size
+     * puts it into the memory cache under the key the view will ask for.
+     */
+    static RequestCreator createThumbnailRequest(Picasso aPicasso, String aUrl, int aSizePx) {
+        // the thumbnails have no transparency, so they take half the memory without an alpha channel
+        return aPicasso.load(aUrl).config(Bitmap.Config.RGB_565)
+                .resize(quantize(aSizePx), quantize(aSizePx)).onlyScaleDown().centerInside();
+    }
+
+    /**
+     * Displays the album art of {@code aTrack} at half the window size, picking the smallest image variant that
+     * covers it. If it was preloaded with {@link #preloadAlbumArt}, it is there on the first frame.
+     * <p/>
+     * Otherwise the art is shown progressively: the thumbnail the track list has just shown is scaled up at once, and
+     * cross-faded into the full resolution as soon as that is ready. On slow or metered networks the full resolution
+     * is only shown if it is cached, it is never downloaded.
+     */
+    public static void showAlbumArt(ImageView aView, SpotifyItem.Track aTrack) {
         Rect rect = new Rect();
         aView.getWindowVisibleDisplayFrame(rect);
         aView.setMinimumHeight( rect.height() / 2 );
         aView.setMinimumWidth( rect.width() / 2 );
-        if (aUrl != null) {
-            Picasso.with(aView.getContext()).load(aUrl).resize(rect.width() / 2, rect.height() / 2).
-                    centerInside().into(aView);
-        } else {
+        int targetPx = getAlbumArtSizePx(rect);
+        String url = getAlbumArtUrl(aTrack, targetPx);
+        if (url == null) {
             aView.setImageResource(DEFAULT_THUMBNAIL_ID);
+            return;
+        }
+        boolean constrained = isSlowOrMetered(aView.getContext());
+        ThumbnailTarget thumbnail = new ThumbnailTarget(aView);
+        aView.setTag(thumbnail); // Picasso only keeps a weak reference to its targets
+
+        RequestCreator request = createAlbumArtRequest(ImagePipeline.forArtwork(aView.getContext()), url, targetPx)
+                .placeholder(DEFAULT_THUMBNAIL_ID);
+        if (constrained) {
+            request.networkPolicy(NetworkPolicy.OFFLINE);
+        }
+        request.into(aView, thumbnail);
+        if (thumbnail.mFullLoaded) {
+            return; // from memory, already shown
+        }
+
+        // the same request the row of the track list made, so it is in memory most of the time
+        int thumbnailPx = aView.getResources().getDimensionPixelSize(R.dimen.list_item_image_size);
+        AlbumImages.Variants images = AlbumImages.get(aTrack.albumId);
+        String thumbnailUrl = images != null ? images.urlFor(thumbnailPx) : aTrack.imageUrl;
+        if (thumbnailUrl != null && !thumbnailUrl.equals(url)) {
+            RequestCreator thumbnailRequest = createThumbnailRequest(ImagePipeline.with(aView.getContext()),
+                    thumbnailUrl, thumbnailPx);
+            if (!constrained) {
+                thumbnailRequest.networkPolicy(NetworkPolicy.OFFLINE); // not worth a download, the full one comes
+            }
+            thumbnailRequest.into(thumbnail);
+        }
+    }
+
+    /**
+     * Downloads and decodes the album art of {@code aTrack} in the background, the way {@link #showAlbumArt} would
+     * show it in {@code aView}, e.g. for the tracks next to the one playing. On slow or metered networks only cached
+     * art is decoded.
+     *
+     * @param aTag to cancel the preloads with
+     */
+    public static void preloadAlbumArt(ImageView aView, SpotifyItem.Track aTrack, Object aTag) {
+        Rect rect = new Rect();
+        aView.getWindowVisibleDisplayFrame(rect);
+        int targetPx = getAlbumArtSizePx(rect);
+        String url = getAlbumArtUrl(aTrack, targetPx);
+        if (url != null) {
+            RequestCreator request = createAlbumArtRequest(ImagePipeline.forArtwork(aView.getContext()), url,
+                    targetPx);
+            if (isSlowOrMetered(aView.getContext())) {
+                request.networkPolicy(NetworkPolicy.OFFLINE);
+            }
+            request.tag(aTag).fetch();
+        }
+    }
+
+    // the full resolution album art is not worth the bytes or the wait on these
+    private static boolean isSlowOrMetered(Context aContext) {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) aContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivityManager.getActiveNetworkInfo();
+        if (network == null || !network.isConnected()) {
+            return true;
+        }
+        if (network.getType() == ConnectivityManager.TYPE_MOBILE) {
+            switch (network.getSubtype()) {
+                case TelephonyManager.NETWORK_TYPE_GPRS:
+                case TelephonyManager.NETWORK_TYPE_EDGE:
+                case TelephonyManager.NETWORK_TYPE_CDMA:
+                case TelephonyManager.NETWORK_TYPE_1xRTT:
+                case TelephonyManager.NETWORK_TYPE_IDEN:
+                    return true;
+            }
+        }
+        return ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+
+    // shows the scaled up thumbnail, unless the full resolution or another track has made it there first. the full
+    // resolution then cross-fades from whatever the view shows
+    private static class ThumbnailTarget implements Target, Callback {
+        private final ImageView mView;
+        private boolean mFullLoaded;
+
+        ThumbnailTarget(ImageView aView) {
+            mView = aView;
+        }
+
+        @Override
+        public void onSuccess() {
+            mFullLoaded = true;
         }
+
+        @Override
+        public void onError() {
+        }
+
+        @Override
+        public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
+            if (!mFullLoaded && mView.getTag() == this) {
+                mView.setImageBitmap(bitmap);
+            }
+        }
+
+        @Override
+        public void onBitmapFailed(Drawable errorDrawable) {
+        }
+
+        @Override
+        public void onPrepareLoad(Drawable placeHolderDrawable) {
+        }
+    }
+
+    // not the size of the view: it wraps the image, so it is only as large as the previous one
+    private static int getAlbumArtSizePx(Rect aWindow) {
+        return quantize(Math.max(aWindow.width(), aWindow.height()) / 2);
+    }
+
+    private static String getAlbumArtUrl(SpotifyItem.Track aTrack, int aTargetPx) {
+        AlbumImages.Variants images = AlbumImages.get(aTrack.albumId);
+        return images != null ? images.urlFor(aTargetPx) : aTrack.largeImageUrl;
+    }
+
+    // preloads and the view have to ask for the same, to share the decoded bitmap
+    private static RequestCreator createAlbumArtRequest(Picasso aPicasso, String aUrl, int aTargetPx) {
+        return aPicasso.load(aUrl).resize(aTargetPx, aTargetPx).onlyScaleDown().centerInside();
     }
 
     private ImageLoaderUtils() {
@@ -0,0 +1,248 @@
+package com.udacity.lesson.nano.streamapp;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Response;
+import com.squareup.picasso.OkHttpDownloader;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.StatsSnapshot;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyHttpStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Picasso instance shared by all screens, configured in {@code res/values/images.xml}:
+ * <ul>
+ * <li>downloads go through the OkHttp client of the {@code SpotifyHttpStack}, sharing its connections</li>
+ * <li>the downloaded artwork is kept in a disk cache with a fixed byte budget, and is considered fresh for a long
+ * time, so a previously viewed artist comes back without any network</li>
+ * <li>the decoded bitmaps are kept in a memory cache sized from the memory class of the device, which the
+ * {@code MemoryBudget} shrinks when memory runs low</li>
+ * </ul>
+ * Use {@link #with} instead of {@code Picasso.with()}.
+ * <p/>
+ * The large album art of the player goes through a second instance, {@link #forArtwork}: same downloads and disk
+ * cache, but a small memory cache and threads of its own, so preloading the art of the next tracks neither evicts
+ * the thumbnails nor competes with them.
+ */
+public class ImagePipeline {
+
+    private static final String LOG_TAG = ImagePipeline.class.getSimpleName();
+
+    // each thread downloads as well as decodes, so with a single one the art on screen queued behind a preload still
+    // downloading. the player asks for its art before it cancels the stale preloads and issues the new ones, so the
+    // art only competes with the preloads already running
+    private static final int ARTWORK_THREADS = 2;
+
+    private static ImagePipeline pipeline;
+
+    private final Picasso mPicasso;
+    private final Picasso mArtworkPicasso;
+    private final Cache mDiskCache;
+    // each instance counts its own downloads, the disk cache is shared and cannot tell them apart
+    private final ResponseCounter mResponses = new ResponseCounter();
+    private final ResponseCounter mArtworkResponses = new ResponseCounter();
+
+    private ImagePipeline(Context aContext) {
+        Resources res = aContext.getResources();
+        OkHttpClient shared = SpotifyHttpStack.getInstance(aContext).getOkHttpClient();
+
+        Cache diskCache = null;
+        try {
+            diskCache = new Cache(new File(aContext.getCacheDir(), "images"),
+                    res.getInteger(R.integer.image_disk_cache_megabytes) * 1024L * 1024L);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "no disk cache for images", e); // still works, just fetches everything again
+        }
+        mDiskCache = diskCache;
+        int minFreshSeconds = (int) TimeUnit.DAYS.toSeconds(res.getInteger(R.integer.image_min_fresh_days));
+
+        // both memory caches give their memory back when it runs low
+        MemoryBudget budget = MemoryBudget.getInstance(aContext);
+        BitmapLruCache memoryCache = new BitmapLruCache(
+                (int) budget.getShareBytes(res.getInteger(R.integer.image_memory_cache_percent)));
+        budget.register("thumbnails", memoryCache);
+        BitmapLruCache artworkCache = new BitmapLruCache(
+                (int) budget.getShareBytes(res.getInteger(R.integer.image_artwork_cache_percent)));
+        budget.register("album art", artworkCache);
+
+        mPicasso = new Picasso.Builder(aContext)
+                .downloader(new OkHttpDownloader(createClient(shared, diskCache, minFreshSeconds, mResponses)))
+                .memoryCache(memoryCache)
+                .build();
+        mArtworkPicasso = new Picasso.Builder(aContext)
+                .downloader(new OkHttpDownloader(
+                        createClient(shared, diskCache, minFreshSeconds, mArtworkResponses)))
+                .memoryCache(artworkCache)
+                .executor(Executors.newFixedThreadPool(ARTWORK_THREADS, new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "ArtworkLoader-" + count.incrementAndGet());
+                    }
+                }))
+                .build();
+    }
+
+    // shares the connections of the SpotifyHttpStack. not a clone(): in this OkHttp version it would share the lists
+    // of interceptors as well, and ours would see the Spotify requests
+    private static OkHttpClient createClient(OkHttpClient aShared, Cache aDiskCache, int aMinFreshSeconds,
+                                             ResponseCounter aCounter) {
+        OkHttpClient client = new OkHttpClient();
+        client.setConnectionPool(aShared.getConnectionPool());
+        client.setConnectTimeout(aShared.getConnectTimeout(), TimeUnit.MILLISECONDS);
+        client.setReadTimeout(aShared.getReadTimeout(), TimeUnit.MILLISECONDS);
+        if (aDiskCache != null) {
+            client.setCache(aDiskCache);
+        }
+        client.networkInterceptors().add(new MinFreshInterceptor(aMinFreshSeconds));
+        client.interceptors().add(aCounter);
+        return client;
+    }
+
+    /**
+     * @return the shared Picasso instance, created on first use
+     */
+    public static Picasso with(Context aContext) {
+        return getInstance(aContext).mPicasso;
+    }
+
+    /**
+     * @return the shared Picasso instance for the large album art of the player
+     */
+    public static Picasso forArtwork(Context aContext) {
+        return getInstance(aContext).mArtworkPicasso;
+    }
+
+    public static synchronized ImagePipeline getInstance(Context aContext) {
+        if (pipeline == null) {
+            pipeline = new ImagePipeline(aContext.getApplicationContext());
+        }
+        return pipeline;
+    }
+
+    /**
+     * @return the counters of the thumbnails, see {@link #with}
+     */
+    public Stats getStats() {
+        return getStats(mPicasso, mResponses);
+    }
+
+    /**
+     * @return the counters of the album art, see {@link #forArtwork}
+     */
+    public Stats getArtworkStats() {
+        return getStats(mArtworkPicasso, mArtworkResponses);
+    }
+
+    private Stats getStats(Picasso aPicasso, ResponseCounter aResponses) {
+        StatsSnapshot snapshot = aPicasso.getSnapshot();
+        return new Stats(snapshot.cacheHits, snapshot.cacheMisses, aResponses.mFromDisk.get(),
+                aResponses.mFromNetwork.get(), aResponses.mBytesFromDisk.get(), aResponses.mBytesFromNetwork.get(),
+                snapshot.size, snapshot.maxSize,
+                mDiskCache != null ? mDiskCache.getSize() : 0, mDiskCache != null ? mDiskCache.getMaxSize() : 0);
+    }
+
+    /**
+     * Snapshot of the cache counters of one Picasso instance. A memory miss is looked up in the disk cache, a disk
+     * miss goes to the network. The disk cache is shared by both instances, its size is the one of both.
+     */
+    public static class Stats {
+        public final long memoryHits;
+        public final long memoryMisses;
+        public final long diskHits;
+        public final long networkFetches;
+        public final long bytesSaved; // served from the disk cache instead of the network
+        public final long bytesDownloaded;
+        public final int memoryBytes;
+        public final int memoryMaxBytes;
+        public final long diskBytes;
+        public final long diskMaxBytes;
+
+        Stats(long aMemoryHits, long aMemoryMisses, long aDiskHits, long aNetworkFetches, long aBytesSaved,
+              long aBytesDownloaded, int aMemoryBytes, int aMemoryMaxBytes, long aDiskBytes, long aDiskMaxBytes) {
+            memoryHits = aMemoryHits;
+            memoryMisses = aMemoryMisses;
+            diskHits = aDiskHits;
+            networkFetches = aNetworkFetches;
+            bytesSaved = aBytesSaved;
+            bytesDownloaded = aBytesDownloaded;
+            memoryBytes = aMemoryBytes;
+            memoryMaxBytes = aMemoryMaxBytes;
+            diskBytes = aDiskBytes;
+            diskMaxBytes = aDiskMaxBytes;
+        }
+
+        // share of the image requests, that did not go to the network
+        public double getHitRate() {
+            long requests = memoryHits + memoryMisses;
+            return requests == 0 ? 0 : (double) Math.max(0, requests - networkFetches) / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hit rate %.0f%%, hits=%d/%d (memory/disk), network=%d, bytes saved=%d, " +
+                            "downloaded=%d, memory=%d/%d bytes, disk=%d/%d bytes", getHitRate() * 100, memoryHits,
+                    diskHits, networkFetches, bytesSaved, bytesDownloaded, memoryBytes, memoryMaxBytes, diskBytes,
+                    diskMaxBytes);
+        }
+    }
+
+    // tells the responses answered by the disk cache from the ones that went to the network
+    private static class ResponseCounter implements Interceptor {
+        final AtomicLong mFromDisk = new AtomicLong();
+        final AtomicLong mFromNetwork = new AtomicLong();
+        final AtomicLong mBytesFromDisk = new AtomicLong();
+        final AtomicLong mBytesFromNetwork = new AtomicLong();
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Response response = chain.proceed(chain.request());
+            long length = Math.max(0, response.body().contentLength());
+            if (response.networkResponse() == null) {
+                mFromDisk.incrementAndGet();
+                mBytesFromDisk.addAndGet(length);
+            } else {
+                mFromNetwork.incrementAndGet(); // a revalidation counts too, it is a round trip
+                mBytesFromNetwork.addAndGet(length);
+            }
+            return response;
+        }
+    }
+
+    // the artwork is immutable under its URL. keeps it fresh for at least aMinFreshSeconds, so that showing it again
+    // is answered by the disk cache alone, without revalidating it with the server
+    private static class MinFreshInterceptor implements Interceptor {
+        private final int mMinFreshSeconds;
+
+        MinFreshInterceptor(int aMinFreshSeconds) {
+            mMinFreshSeconds = aMinFreshSeconds;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Response response = chain.proceed(chain.request());
+            if (!response.isSuccessful() || response.cacheControl().noStore() ||
+                    response.cacheControl().maxAgeSeconds() >= mMinFreshSeconds) {
+                return response;
+            }
+            return response.newBuilder()
+                    .removeHeader("Pragma")
+                    .removeHeader("Expires")
+                    .header("Cache-Control", "public, max-age=" + mMinFreshSeconds)
+                    .build();
+        }
+    }
+}
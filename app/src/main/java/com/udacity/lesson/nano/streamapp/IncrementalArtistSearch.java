@@ -0,0 +1,249 @@
+package com.udacity.lesson.nano.streamapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyCallback;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyCatalog;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyError;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItem;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyRanking;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyRequest;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyRequester;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Locale;
+
+/**
+ * Live artist search while the user is typing.
+ * <p/>
+ * Keystrokes are debounced, so a request is only sent once the user pauses. Any request for a phrase the user has
+ * typed past is cancelled (if still queued it is not sent at all), and responses arriving for anything but the
+ * current phrase are dropped. While the request is in flight, the artists seen before are searched in the
+ * {@code SpotifyCatalog}, so matches show up with every keystroke - even offline. Once the response arrives it
+ * replaces them, unless it is the complete result: then the local matches it does not contain are merged in.
+ * <p/>
+ * Results are settled once the user submits the phrase, or keeps it for a while after its results arrived. Only then
+ * they are worth spending more on, e.g. prefetching the top tracks of the leading artists.
+ * <p/>
+ * Must only be used from the main UI thread.
+ */
+class IncrementalArtistSearch implements TextWatcher {
+
+    // short enough to have results on screen quickly after the user pauses,
+    // long enough not to send a request for every keystroke
+    private static final long DEBOUNCE_MS = 100;
+
+    // the user has been looking at the results that long without typing on, they are what the user was looking for
+    private static final long SETTLE_MS = 1000;
+
+    interface Listener {
+        /**
+         * Artists seen before matching {@code aQuery}, while the actual request is still in flight
+         */
+        void onLocalResults(String aQuery, List<SpotifyItem.Artist> aItems);
+
+        /**
+         * The final results for {@code aQuery}
+         *
+         * @param aComplete  true, if there are no further pages to load
+         * @param aSubmitted true, if the user explicitly submitted the search phrase
+         */
+        void onResults(String aQuery, List<SpotifyItem.Artist> aItems, boolean aComplete, boolean aSubmitted);
+
+        /**
+         * The results for {@code aQuery} have settled, see above. Called once per phrase, so not again for the fresh
+         * results following stale ones.
+         */
+        void onSettled(String aQuery, List<SpotifyItem.Artist> aItems);
+
+        /**
+         * The search for {@code aQuery} failed, and nothing was cached for it
+         *
+         * @param aSubmitted true, if the user explicitly submitted the search phrase
+         */
+        void onError(String aQuery, SpotifyError aError, boolean aSubmitted);
+    }
+
+    private final SpotifyRequester mRequester;
+    private final SpotifyCatalog mCatalog;
+    private final Listener mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private String mTypedQuery = "";           // what the user currently has typed
+    private SpotifyRequest<SpotifyItem.Artist> mPendingRequest;
+    private String mPendingQuery;
+    private boolean mSubmitted;
+    private List<SpotifyItem.Artist> mResults; // the latest ones for mTypedQuery, until they have settled
+    private String mSettledQuery;
+
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startRequest(mTypedQuery);
+        }
+    };
+
+    private final Runnable mSettleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            settle();
+        }
+    };
+
+    IncrementalArtistSearch(SpotifyRequester aRequester, Listener aListener) {
+        mRequester = aRequester;
+        mCatalog = aRequester.getCatalog();
+        mListener = aListener;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        String query = normalize(s);
+        if (query.equals(mTypedQuery)) {
+            return;
+        }
+        mTypedQuery = query;
+        mSubmitted = false;
+        mResults = null;
+        mHandler.removeCallbacks(mSearchRunnable);
+        mHandler.removeCallbacks(mSettleRunnable);
+        cancelStaleRequest();
+        if (query.isEmpty()) {
+            return;
+        }
+        searchLocally(query);
+        mHandler.postDelayed(mSearchRunnable, DEBOUNCE_MS);
+    }
+
+    /**
+     * Searches for {@code aQuery} right away, e.g. if the user pressed the search button
+     */
+    void submit(CharSequence aQuery) {
+        mHandler.removeCallbacks(mSearchRunnable);
+        String query = normalize(aQuery);
+        if (!query.equals(mTypedQuery)) {
+            mResults = null;
+        }
+        mTypedQuery = query;
+        mSubmitted = true;
+        cancelStaleRequest();
+        if (mResults != null) {
+            settle(); // already on screen, and now explicitly asked for
+        }
+        startRequest(mTypedQuery);
+    }
+
+    /**
+     * Stops any pending search, e.g. because the View is being destroyed
+     */
+    void cancel() {
+        mHandler.removeCallbacks(mSearchRunnable);
+        mHandler.removeCallbacks(mSettleRunnable);
+        if (mPendingRequest != null) {
+            mPendingRequest.cancel();
+            mPendingRequest = null;
+        }
+    }
+
+    private static String normalize(CharSequence aQuery) {
+        return aQuery.toString().trim().toLowerCase(Locale.getDefault());
+    }
+
+    private void cancelStaleRequest() {
+        if (mPendingRequest != null && !mTypedQuery.equals(mPendingQuery)) {
+            mPendingRequest.cancel();
+            mPendingRequest = null;
+        }
+    }
+
+    // the catalog answers in well below a millisecond, fine to do on every keystroke
+    private void searchLocally(String aQuery) {
+        mListener.onLocalResults(aQuery, mCatalog.searchArtists(aQuery, SpotifyRequester.ARTIST_PAGE_SIZE));
+    }
+
+    // tops up a complete result with the local matches, an incomplete one is continued by the remote pages instead
+    private List<SpotifyItem.Artist> mergeLocal(String aQuery, List<SpotifyItem.Artist> aRemote) {
+        Set<String> ids = new HashSet<>();
+        for (SpotifyItem.Artist artist : aRemote) {
+            ids.add(artist.id);
+        }
+        List<SpotifyItem.Artist> local = new ArrayList<>();
+        for (SpotifyItem.Artist artist : mCatalog.searchArtists(aQuery, SpotifyRequester.ARTIST_PAGE_SIZE)) {
+            if (ids.add(artist.id)) {
+                local.add(artist);
+            }
+        }
+        // both are ranked already
+        return SpotifyRanking.merge(Arrays.asList(aRemote, local), aRemote.size() + local.size());
+    }
+
+    private void settle() {
+        mHandler.removeCallbacks(mSettleRunnable);
+        if (mResults == null || mTypedQuery.equals(mSettledQuery)) {
+            return;
+        }
+        mSettledQuery = mTypedQuery;
+        mListener.onSettled(mTypedQuery, mResults);
+    }
+
+    private void startRequest(final String aQuery) {
+        if (aQuery.isEmpty()) {
+            return;
+        }
+        if (mPendingRequest != null) {
+            if (aQuery.equals(mPendingQuery)) {
+                return; // already on its way
+            }
+            mPendingRequest.cancel();
+        }
+        mPendingQuery = aQuery;
+        mPendingRequest = mRequester.queryArtist(aQuery, new SpotifyCallback<SpotifyItem.Artist>() {
+            @Override
+            public void onUpdate(List<SpotifyItem.Artist> aItems, boolean aStale) {
+                if (!aQuery.equals(mTypedQuery)) {
+                    return; // out of order, the user has typed on in the meantime
+                }
+                if (!aStale) { // otherwise the fresh results are still to come
+                    mPendingRequest = null;
+                }
+                boolean complete = aItems.size() < SpotifyRequester.ARTIST_PAGE_SIZE;
+                List<SpotifyItem.Artist> items = complete ? mergeLocal(aQuery, aItems) : aItems;
+                mListener.onResults(aQuery, items, complete, mSubmitted);
+                if (items.isEmpty()) {
+                    return;
+                }
+                mResults = items;
+                mHandler.removeCallbacks(mSettleRunnable);
+                if (mSubmitted) {
+                    settle();
+                } else {
+                    mHandler.postDelayed(mSettleRunnable, SETTLE_MS);
+                }
+            }
+
+            @Override
+            public void onError(SpotifyError aError) {
+                if (!aQuery.equals(mTypedQuery)) {
+                    return;
+                }
+                mPendingRequest = null;
+                mListener.onError(aQuery, aError, mSubmitted);
+            }
+        });
+    }
+}
@@ -0,0 +1,121 @@
+package com.udacity.lesson.nano.streamapp;
+
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Picasso;
+
+/**
+ * Schedules the thumbnail loads of a list of {@code SpotifyItem}s by its scroll state.
+ * <p/>
+ * While the list is flung, the loads of its rows are paused - the rows are gone again before the images would
+ * arrive - and resumed as soon as the list settles. When a row scrolls off screen, its pending load is cancelled.
+ * Once the list comes to rest, the thumbnails of the next screenful in the direction of the last scroll are fetched
+ * into the cache of Picasso, at the size the rows will ask for.
+ * <p/>
+ * Install it with {@link #attach}, it forwards the scroll events to the listener the list had before. Must only be
+ * used from the main UI thread.
+ */
+class ListImageScheduler implements AbsListView.OnScrollListener, AbsListView.RecyclerListener {
+
+    private final Picasso mPicasso;
+    private final SpotifyItemAdapter<?> mAdapter;
+    private final AbsListView.OnScrollListener mDelegate;
+
+    // the tags of the loads of the visible rows and of the prefetches, so each can be paused or cancelled on its own
+    private final Object mRowTag = new Object();
+    private final Object mPrefetchTag = new Object();
+
+    private int mScrollState = SCROLL_STATE_IDLE;
+    private int mFirstVisible;
+    private int mVisibleCount;
+    private boolean mScrollingDown = true;
+
+    private ListImageScheduler(AbsListView aListView, SpotifyItemAdapter<?> aAdapter,
+                               AbsListView.OnScrollListener aDelegate) {
+        mPicasso = ImagePipeline.with(aListView.getContext());
+        mAdapter = aAdapter;
+        mDelegate = aDelegate;
+    }
+
+    /**
+     * Schedules the thumbnails of {@code aAdapter} shown in {@code aListView}
+     *
+     * @param aDelegate the scroll listener of the list, or null
+     */
+    static ListImageScheduler attach(AbsListView aListView, SpotifyItemAdapter<?> aAdapter,
+                                     AbsListView.OnScrollListener aDelegate) {
+        ListImageScheduler scheduler = new ListImageScheduler(aListView, aAdapter, aDelegate);
+        aAdapter.setImageTag(scheduler.mRowTag);
+        aListView.setOnScrollListener(scheduler);
+        aListView.setRecyclerListener(scheduler);
+        return scheduler;
+    }
+
+    /**
+     * Cancels all pending loads, e.g. because the View is being destroyed
+     */
+    void cancel() {
+        mPicasso.resumeTag(mRowTag); // otherwise Picasso keeps it among its paused tags
+        mPicasso.cancelTag(mRowTag);
+        mPicasso.cancelTag(mPrefetchTag);
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        if (scrollState == SCROLL_STATE_FLING) {
+            mPicasso.pauseTag(mRowTag);
+            mPicasso.cancelTag(mPrefetchTag); // fetched for where the list was
+        } else if (mScrollState == SCROLL_STATE_FLING) {
+            mPicasso.resumeTag(mRowTag);
+        }
+        if (scrollState == SCROLL_STATE_IDLE) {
+            prefetchNextScreen(view);
+        }
+        mScrollState = scrollState;
+        if (mDelegate != null) {
+            mDelegate.onScrollStateChanged(view, scrollState);
+        }
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if (firstVisibleItem != mFirstVisible) {
+            mScrollingDown = firstVisibleItem > mFirstVisible;
+        }
+        mFirstVisible = firstVisibleItem;
+        mVisibleCount = visibleItemCount;
+        if (mDelegate != null) {
+            mDelegate.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+        }
+    }
+
+    @Override
+    public void onMovedToScrapHeap(View view) {
+        ImageView imageView = (ImageView) view.findViewById(mAdapter.getImageViewId());
+        if (imageView != null) {
+            mPicasso.cancelRequest(imageView);
+        }
+    }
+
+    // the rows all have the same image size, so any visible one tells what the next ones will ask for
+    private void prefetchNextScreen(AbsListView aListView) {
+        if (mVisibleCount == 0 || aListView.getChildCount() == 0) {
+            return;
+        }
+        ImageView imageView = (ImageView) aListView.getChildAt(0).findViewById(mAdapter.getImageViewId());
+        int sizePx = imageView != null ? ImageLoaderUtils.getTargetSizePx(imageView) : 0;
+        if (sizePx <= 0) {
+            return;
+        }
+        int from = mScrollingDown ? mFirstVisible + mVisibleCount : Math.max(0, mFirstVisible - mVisibleCount);
+        int to = mScrollingDown ? Math.min(from + mVisibleCount, mAdapter.getCount()) : mFirstVisible;
+        for (int position = from; position < to; position++) {
+            String url = mAdapter.getImageUrlAt(position, sizePx);
+            if (url != null) {
+                ImageLoaderUtils.createThumbnailRequest(mPicasso, url, sizePx).tag(mPrefetchTag).fetch();
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.udacity.lesson.nano.streamapp;
 
+import android.app.AlertDialog;
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.v7.app.ActionBarActivity;
@@ -34,6 +35,7 @@ public class MainActivity extends ActionBarActivity {
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_main, menu);
+        menu.findItem(R.id.action_memory_usage).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
@@ -43,6 +45,14 @@ public class MainActivity extends ActionBarActivity {
         if (id == R.id.action_settings) {
             return true;
         }
+        if (id == R.id.action_memory_usage) { // what the caches hold at the moment
+            new AlertDialog.Builder(this)
+                    .setTitle(R.string.action_memory_usage)
+                    .setMessage(MemoryBudget.getInstance(this).getReadout())
+                    .setPositiveButton(android.R.string.ok, null)
+                    .show();
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 }
\ No newline at end of file
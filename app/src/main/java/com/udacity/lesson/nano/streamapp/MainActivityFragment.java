@@ -5,7 +5,6 @@ import android.content.Intent;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Bundle;
-import android.os.Parcelable;
 import android.support.v4.app.Fragment;
 import android.util.Log;
 import android.view.KeyEvent;
@@ -19,7 +18,8 @@ import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyCallback;
+import com.udacity.lesson.nano.streamapp.spotifydata.ParcelableItems;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyError;
 import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItem;
 import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyRequester;
 
@@ -30,13 +30,18 @@ import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.ARTI
 import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.ARTIST_NAME;
 import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.ARTIST_QUERY_RESULT;
 
-public class MainActivityFragment extends Fragment implements SpotifyCallback<SpotifyItem.Artist> {
+public class MainActivityFragment extends Fragment implements IncrementalArtistSearch.Listener {
 
     private static final String LOG_TAG = MainActivityFragment.class.getSimpleName();
     private SpotifyItemAdapter.Artist mSpotifyAdapter;
 
     private ListView mListView;
 
+    private IncrementalArtistSearch mSearch;
+    private TopTracksPrefetcher mPrefetcher;
+    private ArtistResultPages mPages;
+    private ListImageScheduler mImages;
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -46,9 +51,9 @@ public class MainActivityFragment extends Fragment implements SpotifyCallback<Sp
         List<SpotifyItem.Artist> artistQueryList = new ArrayList<>();
 
         if (savedInstanceState != null) {
-            ArrayList<SpotifyItem.Artist> items = savedInstanceState.getParcelableArrayList(ARTIST_QUERY_RESULT);
-            if (items != null || !items.isEmpty()) {
-                artistQueryList.addAll(items);
+            ParcelableItems items = savedInstanceState.getParcelable(ARTIST_QUERY_RESULT);
+            if (items != null) {
+                artistQueryList.addAll(items.<SpotifyItem.Artist>getItems());
             }
         }
 
@@ -60,15 +65,23 @@ public class MainActivityFragment extends Fragment implements SpotifyCallback<Sp
 
         mSpotifyAdapter = new SpotifyItemAdapter.Artist(getActivity(), 0, artistQueryList);
 
+        // further pages are loaded while scrolling, the ones far off screen are dropped again
+        SpotifyRequester requester = SpotifyRequester.getInstance(getActivity());
+        SpotifyItem.Artist placeholder = new SpotifyItem.Artist(
+                rootView.getContext().getString(R.string.loading_artists), null, 0, null);
+        mPages = new ArtistResultPages(requester, mSpotifyAdapter, artistQueryList, placeholder);
+
         mListView = (ListView) rootView.findViewById(R.id.listview_artists);
         mListView.setAdapter(mSpotifyAdapter);
+        // thumbnails are paused while flinging and prefetched for the next screen once the list settles
+        mImages = ListImageScheduler.attach(mListView, mSpotifyAdapter, mPages);
 
         mListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
 
             @Override
             public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
                 SpotifyItem.Artist flavor = mSpotifyAdapter.getItem(position);
-                if (enterSearchPhrase.equals(flavor.name)) {
+                if (enterSearchPhrase.equals(flavor.name) || mPages.isPlaceholder(flavor)) {
                     return;
                 }
 
@@ -100,13 +113,10 @@ public class MainActivityFragment extends Fragment implements SpotifyCallback<Sp
 
         EditText editText = (EditText) rootView.findViewById(R.id.artist_search_edittext);
 
-        // although it would be cool to have live queries, while typing text, it is not required by the spec
-        // "P1 - Spotify Streamer, Stage 1 Rubric"
-        // https://docs.google.com/document/d/1Q7b2dIt18r2pXqDhE_TsgZ5UkfzbybkGlmKfyoqpegc/pub?embedded=true
-//        editText.addTextChangedListener(new TextWatcher() {
-//            @Override  public void beforeTextChanged(CharSequence s, int start, int count, int after) { Log.d(LOG_TAG, "before text changed: " + s.toString()); }
-//            @Override  public void onTextChanged(CharSequence s, int start, int before, int count) { Log.d(LOG_TAG, "on text changed: " + s.toString()); }
-//            @Override  public void afterTextChanged(Editable s) {  Log.d(LOG_TAG, "after text changed: " + s.toString()); } });
+        // live queries while typing text: debounced, stale requests are cancelled
+        mSearch = new IncrementalArtistSearch(requester, this);
+        mPrefetcher = new TopTracksPrefetcher(getActivity(), requester);
+        editText.addTextChangedListener(mSearch);
 
         // idea of using a search action from: http://developer.android.com/guide/topics/ui/controls/text.html
         editText.setOnEditorActionListener(new TextView.OnEditorActionListener() {
@@ -116,7 +126,7 @@ public class MainActivityFragment extends Fragment implements SpotifyCallback<Sp
                 if (handled) {
                     Log.d(LOG_TAG, "handled: " + v.getText());
                     if (isNetworkAvailable()) {
-                        SpotifyRequester.getInstance().queryArtist(v.getText().toString(), MainActivityFragment.this);
+                        mSearch.submit(v.getText());
                     } else {
                         int duration = Toast.LENGTH_LONG;
                         Toast toast = Toast.makeText(mSpotifyAdapter.getContext(), R.string.no_network_available, duration);
@@ -129,6 +139,17 @@ public class MainActivityFragment extends Fragment implements SpotifyCallback<Sp
         return rootView;
     }
 
+    @Override
+    public void onDestroyView() {
+        mSearch.cancel();
+        mPrefetcher.cancel();
+        mPages.cancel();
+        mImages.cancel();
+        ImagePipeline images = ImagePipeline.getInstance(getActivity());
+        Log.d(LOG_TAG, "images: " + images.getStats() + "\nalbum art: " + images.getArtworkStats());
+        super.onDestroyView();
+    }
+
     private boolean isNetworkAvailable() {
         ConnectivityManager connectivityManager
                 = (ConnectivityManager) getActivity().getSystemService(Context.CONNECTIVITY_SERVICE);
@@ -136,37 +157,68 @@ public class MainActivityFragment extends Fragment implements SpotifyCallback<Sp
         return activeNetworkInfo != null && activeNetworkInfo.isConnected();
     }
 
-    // convert the adapter elements to parcelable
-    private ArrayList<Parcelable> asParcelable() {
-        ArrayList<Parcelable> items = new ArrayList<>();
+    // convert the adapter elements to parcelable, leaving out the dropped ones
+    private ParcelableItems asParcelable() {
+        List<SpotifyItem.Artist> items = new ArrayList<>();
         for (int i = 0; i < mSpotifyAdapter.getCount(); i++) {
-            items.add(mSpotifyAdapter.getItem(i));
+            SpotifyItem.Artist artist = mSpotifyAdapter.getItem(i);
+            if (!mPages.isPlaceholder(artist)) {
+                items.add(artist);
+            }
         }
-        return items;
+        return new ParcelableItems(items);
     }
 
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
         if (mSpotifyAdapter.getCount() > 0) {
-            ArrayList<Parcelable> items = asParcelable();
-            outState.putParcelableArrayList(ARTIST_QUERY_RESULT, items);
+            outState.putParcelable(ARTIST_QUERY_RESULT, asParcelable());
         }
     }
 
     @Override
-    public void onUpdate(List<SpotifyItem.Artist> aItems) {
+    public void onLocalResults(String aQuery, List<SpotifyItem.Artist> aItems) {
+        // an empty list would only flicker, the actual results may well contain something
+        if (!aItems.isEmpty()) {
+            mPages.showUnpaged(aItems);
+        }
+    }
+
+    @Override
+    public void onResults(String aQuery, List<SpotifyItem.Artist> aItems, boolean aComplete, boolean aSubmitted) {
         if (aItems.isEmpty()) {
-            // learnt during "Project 0 - My App Portfolio":
-            // display a toast and "outsource" strings in the according XML file
-            int duration = Toast.LENGTH_SHORT;
-            Toast toast = Toast.makeText(mSpotifyAdapter.getContext(), R.string.no_artist_found_toast, duration);
-            toast.show();
+            // while typing an empty result is nothing to complain about, the user is not done yet
+            if (aSubmitted) {
+                // learnt during "Project 0 - My App Portfolio":
+                // display a toast and "outsource" strings in the according XML file
+                int duration = Toast.LENGTH_SHORT;
+                Toast toast = Toast.makeText(mSpotifyAdapter.getContext(), R.string.no_artist_found_toast, duration);
+                toast.show();
+            }
             return;
         }
         mListView.smoothScrollToPosition(0);
-        mSpotifyAdapter.clear();
-        mSpotifyAdapter.addAll(aItems);
-        mSpotifyAdapter.notifyDataSetChanged(); // notify only once
+        if (aComplete) {
+            mPages.showUnpaged(aItems);
+        } else {
+            mPages.showFirstPage(aQuery, aItems);
+        }
+    }
+
+    @Override
+    public void onSettled(String aQuery, List<SpotifyItem.Artist> aItems) {
+        // the user is very likely to tap one of the first rows next
+        mPrefetcher.prefetch(aItems);
+    }
+
+    @Override
+    public void onError(String aQuery, SpotifyError aError, boolean aSubmitted) {
+        // unlike "nothing found" this is worth telling, but not while the user is still typing
+        if (aSubmitted) {
+            Toast toast = Toast.makeText(mSpotifyAdapter.getContext(), R.string.search_failed_toast,
+                    Toast.LENGTH_SHORT);
+            toast.show();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+package com.udacity.lesson.nano.streamapp;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Gives the memory of the caches back to the system when it runs low.
+ * <p/>
+ * Each cache registers with its full size, derived from {@link #getMemoryClassBytes()}. At every trim level the
+ * system reports, the caches are shrunk a step further: to three quarters, a half, a quarter and a tenth of their
+ * full size, and down to nothing when the process is about to be killed. They grow back to their full size once an
+ * activity of the app is started again.
+ * <p/>
+ * Must only be used from the main UI thread, which is where the system reports the trim levels.
+ */
+public class MemoryBudget implements ComponentCallbacks2 {
+
+    private static final String LOG_TAG = MemoryBudget.class.getSimpleName();
+
+    /**
+     * Something holding on to memory, that can be released and restored again
+     */
+    public interface Trimmable {
+        /**
+         * @return the (estimated) bytes held right now
+         */
+        long getSizeBytes();
+
+        /**
+         * @return the bytes it may hold at the current budget
+         */
+        long getMaxSizeBytes();
+
+        /**
+         * @param aFraction of its full size it may hold from now on. 0 releases everything, that can be restored
+         *                  later, 1 restores the full size.
+         */
+        void trimTo(double aFraction);
+    }
+
+    private static MemoryBudget budget;
+
+    private final long mMemoryClassBytes;
+    private final Map<String, Trimmable> mTrimmables = new LinkedHashMap<>();
+    private double mFraction = 1;
+
+    private MemoryBudget(Context aContext) {
+        ActivityManager activityManager = (ActivityManager) aContext.getSystemService(Context.ACTIVITY_SERVICE);
+        mMemoryClassBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+    }
+
+    public static synchronized MemoryBudget getInstance(Context aContext) {
+        if (budget == null) {
+            Application application = (Application) aContext.getApplicationContext();
+            budget = new MemoryBudget(application);
+            application.registerComponentCallbacks(budget);
+            application.registerActivityLifecycleCallbacks(new ActivityStartedCallbacks() {
+                @Override
+                public void onActivityStarted(Activity activity) {
+                    budget.setFraction(1);
+                }
+            });
+        }
+        return budget;
+    }
+
+    /**
+     * @return the heap the app should stay within on this device
+     */
+    public long getMemoryClassBytes() {
+        return mMemoryClassBytes;
+    }
+
+    /**
+     * @param aPercent share of the memory class
+     * @return the bytes of {@code aPercent} of the memory class, e.g. for the full size of a cache
+     */
+    public long getShareBytes(int aPercent) {
+        return mMemoryClassBytes / 100 * aPercent;
+    }
+
+    /**
+     * Trims {@code aTrimmable} along with the others from now on, starting at the current budget. Registering another
+     * one under the same name replaces it.
+     */
+    public synchronized void register(String aName, Trimmable aTrimmable) {
+        mTrimmables.put(aName, aTrimmable);
+        if (mFraction < 1) {
+            aTrimmable.trimTo(mFraction);
+        }
+    }
+
+    public synchronized void unregister(String aName, Trimmable aTrimmable) {
+        if (mTrimmables.get(aName) == aTrimmable) {
+            mTrimmables.remove(aName);
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        double fraction;
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            fraction = 0; // next in line to be killed
+        } else if (level >= TRIM_MEMORY_MODERATE) {
+            fraction = 0.1;
+        } else if (level >= TRIM_MEMORY_BACKGROUND) {
+            fraction = 0.25;
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            fraction = 0.5; // nothing is on screen anymore
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            fraction = 0.25;
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            fraction = 0.5;
+        } else {
+            fraction = 0.75;
+        }
+        // levels do not come in order, e.g. UI_HIDDEN after RUNNING_CRITICAL. only ever shrink until restored
+        if (fraction < mFraction) {
+            setFraction(fraction);
+        }
+        Log.d(LOG_TAG, "onTrimMemory(" + level + ")\n" + getReadout());
+    }
+
+    @Override
+    public void onLowMemory() {
+        setFraction(0);
+        Log.d(LOG_TAG, "onLowMemory()\n" + getReadout());
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private synchronized void setFraction(double aFraction) {
+        if (aFraction == mFraction) {
+            return;
+        }
+        mFraction = aFraction;
+        for (Trimmable trimmable : mTrimmables.values()) {
+            trimmable.trimTo(aFraction);
+        }
+    }
+
+    /**
+     * @return the current usage of each cache, one per line, for debugging
+     */
+    public synchronized String getReadout() {
+        StringBuilder readout = new StringBuilder();
+        readout.append(String.format("budget %.0f%% of %d KB memory class", mFraction * 100,
+                mMemoryClassBytes / 1024));
+        long total = 0;
+        for (Map.Entry<String, Trimmable> entry : mTrimmables.entrySet()) {
+            Trimmable trimmable = entry.getValue();
+            long size = trimmable.getSizeBytes();
+            total += size;
+            readout.append(String.format("\n%s: %d of %d KB", entry.getKey(), size / 1024,
+                    trimmable.getMaxSizeBytes() / 1024));
+        }
+        readout.append(String.format("\ntotal: %d KB, heap: %d of %d KB", total / 1024,
+                (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1024,
+                Runtime.getRuntime().maxMemory() / 1024));
+        return readout.toString();
+    }
+
+    // we are only interested in one of them
+    private abstract static class ActivityStartedCallbacks implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
@@ -5,6 +5,8 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.IBinder;
 import android.util.Log;
@@ -15,15 +17,18 @@ import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.SeekBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.udacity.lesson.nano.streamapp.service.PlayerService;
 import com.udacity.lesson.nano.streamapp.service.PlayerServiceListener;
 import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItem;
+import com.udacity.lesson.nano.streamapp.spotifydata.TrackLists;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.ARTIST_NAME;
 import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.TOP_TRACKS;
+import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.TOP_TRACKS_KEY;
 import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.TRACK_DURATION;
 import static com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItemKeys.TRACK_NUMBER;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -40,13 +45,44 @@ public class PlayerActivityFragment extends DialogFragment implements PlayerServ
     private volatile boolean isStopped;
 
     private int trackIndex;
-    private ArrayList<SpotifyItem.Track> trackList;
+    private String trackListKey; // of the trackList in TrackLists
+    private List<SpotifyItem.Track> trackList;
     private String artistName;
     private int trackDuration;
 
     private PlayerService service;
     private ServiceConnection serviceConnection;
 
+    private final Object artworkPreloadTag = new Object(); // of the album art preloads of the tracks around
+
+    // the fragment is retained, but its album art does not need to be while the player is not visible
+    private final MemoryBudget.Trimmable albumArt = new MemoryBudget.Trimmable() {
+        private boolean released;
+
+        @Override
+        public long getSizeBytes() {
+            Drawable drawable = holder.albumArtwork.getDrawable();
+            return drawable instanceof BitmapDrawable ? ((BitmapDrawable) drawable).getBitmap().getByteCount() : 0;
+        }
+
+        @Override
+        public long getMaxSizeBytes() {
+            return getSizeBytes();
+        }
+
+        @Override
+        public void trimTo(double aFraction) {
+            if (aFraction <= 0.25 && !released && !isResumed()) { // never while it is looked at
+                released = true;
+                ImagePipeline.forArtwork(getActivity()).cancelRequest(holder.albumArtwork);
+                holder.albumArtwork.setImageDrawable(null);
+            } else if (aFraction > 0.25 && released) {
+                released = false;
+                setTrackInfos(trackList.get(trackIndex));
+            }
+        }
+    };
+
 
     private Intent serviceIntent;
 
@@ -54,6 +90,9 @@ public class PlayerActivityFragment extends DialogFragment implements PlayerServ
     public void onStart() {
         Log.v(TAG, "onStart()");
         super.onStart();
+        if (trackList == null) {
+            return; // being closed, see onCreateView()
+        }
         serviceConnection = new ServiceConnection() {
             @Override
             public void onServiceConnected(ComponentName name, IBinder binder) {
@@ -87,13 +126,17 @@ public class PlayerActivityFragment extends DialogFragment implements PlayerServ
     public void onStop() {
         Log.v(TAG, "onStop()");
         isStopped = true;
-        getActivity().unbindService(serviceConnection);
+        if (serviceConnection != null) {
+            getActivity().unbindService(serviceConnection);
+        }
         super.onStop();
     }
 
     // https://code.google.com/p/android/issues/detail?id=17423
     @Override
     public void onDestroyView() {
+        MemoryBudget.getInstance(getActivity()).unregister(TAG, albumArt);
+        ImagePipeline.forArtwork(getActivity()).cancelTag(artworkPreloadTag);
         if (getDialog() != null && getRetainInstance())
             getDialog().setDismissMessage(null);
         super.onDestroyView();
@@ -105,7 +148,10 @@ public class PlayerActivityFragment extends DialogFragment implements PlayerServ
         Log.v(TAG, "onSaveInstanceState()");
         outState.putInt(TRACK_NUMBER, trackIndex);
         outState.putInt(TRACK_DURATION, trackDuration);
-        outState.putParcelableArrayList(TOP_TRACKS, trackList);
+        outState.putString(TOP_TRACKS_KEY, trackListKey);
+        if (trackList != null) {
+            outState.putByteArray(TOP_TRACKS, TrackLists.encode(trackList)); // in case the process does not survive
+        }
         outState.putString(ARTIST_NAME, artistName);
     }
 
@@ -117,25 +163,41 @@ public class PlayerActivityFragment extends DialogFragment implements PlayerServ
         if (savedInstanceState != null) {
             Log.v(TAG, "savedInstanceState != null");
             trackIndex = savedInstanceState.getInt(TRACK_NUMBER, 0);
-            trackList = savedInstanceState.getParcelableArrayList(TOP_TRACKS);
+            trackListKey = savedInstanceState.getString(TOP_TRACKS_KEY);
+            trackList = TrackLists.restore(trackListKey, savedInstanceState.getByteArray(TOP_TRACKS));
             artistName = savedInstanceState.getString(ARTIST_NAME);
             trackDuration = savedInstanceState.getInt(TRACK_DURATION);
         } else {
             Bundle bundle = getArguments();
             if (bundle != null) {
                 trackIndex = bundle.getInt(TRACK_NUMBER, 0);
-                trackList = bundle.getParcelableArrayList(TOP_TRACKS);
+                trackListKey = bundle.getString(TOP_TRACKS_KEY);
+                trackList = TrackLists.restore(trackListKey, bundle.getByteArray(TOP_TRACKS));
                 artistName = bundle.getString(ARTIST_NAME);
             } else {
                 Intent intent = getActivity().getIntent();
                 trackIndex = intent.getIntExtra(TRACK_NUMBER, 0);
-                trackList = intent.getParcelableArrayListExtra(TOP_TRACKS);
+                trackListKey = intent.getStringExtra(TOP_TRACKS_KEY);
+                trackList = TrackLists.restore(trackListKey, intent.getByteArrayExtra(TOP_TRACKS));
                 artistName = intent.getStringExtra(ARTIST_NAME);
             }
         }
 
         View rootView = inflater.inflate(R.layout.fragment_player, container, false);
+        if (trackList == null || trackIndex >= trackList.size()) {
+            // nothing to play, e.g. the saved tracks could not be decoded
+            Log.w(TAG, "no track " + trackIndex + " in " + trackListKey);
+            trackList = null;
+            Toast.makeText(getActivity(), R.string.player_tracks_unavailable_toast, Toast.LENGTH_SHORT).show();
+            if (getShowsDialog()) {
+                dismiss();
+            } else {
+                getActivity().finish();
+            }
+            return rootView;
+        }
         holder = new ViewHolder(rootView);
+        MemoryBudget.getInstance(getActivity()).register(TAG, albumArt);
 
         holder.artistNameTextView.setText(artistName);
         SpotifyItem.Track track = trackList.get(trackIndex);
@@ -147,8 +209,9 @@ public class PlayerActivityFragment extends DialogFragment implements PlayerServ
             public void onClick(View v) {
                 if (!isWaitingOnNextMediaPlayerAction) {
                     trackIndex = ++trackIndex % trackListSize;
+                    setTrackInfos(trackList.get(trackIndex)); // the preloaded art, while the service prepares
+                    isWaitingOnNextMediaPlayerAction = true; // before, a prepared next track starts right away
                     service.play(trackList.get(trackIndex));
-                    isWaitingOnNextMediaPlayerAction = true;
                 }
             }
         });
@@ -157,8 +220,9 @@ public class PlayerActivityFragment extends DialogFragment implements PlayerServ
             public void onClick(View v) {
                 if (!isWaitingOnNextMediaPlayerAction) {
                     trackIndex = trackIndex == 0 ? trackListSize - 1 : --trackIndex % trackListSize;
-                    service.play(trackList.get(trackIndex));
+                    setTrackInfos(trackList.get(trackIndex)); // the preloaded art, while the service prepares
                     isWaitingOnNextMediaPlayerAction = true;
+                    service.play(trackList.get(trackIndex));
                 }
             }
         });
@@ -211,7 +275,21 @@ public class PlayerActivityFragment extends DialogFragment implements PlayerServ
         holder.trackNameTextView.setText(track.name);
         holder.albumNameTextView.setText(track.albumName);
         holder.trackLengthTextView.setText(millisToFormattedString(track.durationMs));
-        ImageLoaderUtils.showLargeImageView(holder.albumArtwork, track.largeImageUrl);
+        ImageLoaderUtils.showAlbumArt(holder.albumArtwork, track); // first, it takes over its preload if running
+        preloadAdjacentAlbumArt();
+    }
+
+    // the art of the tracks next and previous is downloaded and decoded ahead, so it is there once the user skips
+    private void preloadAdjacentAlbumArt() {
+        ImagePipeline.forArtwork(getActivity()).cancelTag(artworkPreloadTag); // those for the previous track
+        int distance = getResources().getInteger(R.integer.image_artwork_preload_distance);
+        int size = trackList.size();
+        for (int i = 1; i <= distance && i < size; i++) {
+            ImageLoaderUtils.preloadAlbumArt(holder.albumArtwork, trackList.get((trackIndex + i) % size),
+                    artworkPreloadTag);
+            ImageLoaderUtils.preloadAlbumArt(holder.albumArtwork, trackList.get((trackIndex - i + size) % size),
+                    artworkPreloadTag);
+        }
     }
 
     @Override
@@ -220,11 +298,19 @@ public class PlayerActivityFragment extends DialogFragment implements PlayerServ
             @Override
             public void run() {
                 Log.v(TAG, "onStarted() duration=" + aDurationMs);
+                int index = trackList.indexOf(track);
+                if (index >= 0) {
+                    trackIndex = index; // the service moves on to the next track by itself on completion
+                }
                 setTrackInfos(track);
                 holder.seekBar.setMax(aDurationMs);
                 trackDuration = aDurationMs;
                 holder.playButton.setImageResource(android.R.drawable.ic_media_pause);
                 isWaitingOnNextMediaPlayerAction = false;
+                // the one most likely played next, so skipping to it starts right away
+                if (service != null && trackList.size() > 1) {
+                    service.prepareNext(trackList.get((trackIndex + 1) % trackList.size()));
+                }
             }
         });
     }
@@ -5,8 +5,10 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.udacity.lesson.nano.streamapp.spotifydata.AlbumImages;
 import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItem;
 
 import java.util.List;
@@ -21,17 +23,25 @@ import java.util.List;
  */
 public abstract class SpotifyItemAdapter<T extends SpotifyItem> extends ArrayAdapter<T> {
 
+    private Object mImageTag; // of the image loads, set by the ListImageScheduler of the list
+
     public SpotifyItemAdapter(Context context, int resource, List<T> aItems) {
         super(context, resource, aItems);
     }
 
+    void setImageTag(Object aTag) {
+        mImageTag = aTag;
+    }
+
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         if (convertView == null) {
             convertView = LayoutInflater.from(getContext()).inflate(getListLayoutId(), parent, false);
         }
         final T item = getItem(position);
-        ImageLoaderUtils.showInImageView(convertView, getImageViewId(), item.imageUrl);
+        ImageView imageView = (ImageView) convertView.findViewById(getImageViewId());
+        ImageLoaderUtils.showInImageView(imageView, getImageUrl(item, ImageLoaderUtils.getTargetSizePx(imageView)),
+                mImageTag);
 
         TextView artistNameTextView = (TextView) convertView.findViewById(getTextViewForNameId());
         artistNameTextView.setText(item.name);
@@ -48,6 +58,16 @@ public abstract class SpotifyItemAdapter<T extends SpotifyItem> extends ArrayAda
 
     protected void updateViewImpl(View convertView, T aItem) {}
 
+    // the URL of the smallest image covering aTargetPx, if there is a choice
+    protected String getImageUrl(T aItem, int aTargetPx) {
+        return aItem.imageUrl;
+    }
+
+    // the same for the row at aPosition, before it is shown
+    String getImageUrlAt(int aPosition, int aTargetPx) {
+        return getImageUrl(getItem(aPosition), aTargetPx);
+    }
+
     // Specialization, that sets Artist related stuff to the appropriate widget elements
     public static class Artist extends SpotifyItemAdapter<SpotifyItem.Artist> {
         public Artist(Context c, int r, List<SpotifyItem.Artist> i) {
@@ -62,6 +82,10 @@ public abstract class SpotifyItemAdapter<T extends SpotifyItem> extends ArrayAda
         @Override protected int getTextViewForNameId() {
             return R.id.list_item_artist_name;
         }
+        @Override protected String getImageUrl(SpotifyItem.Artist aItem, int aTargetPx) {
+            AlbumImages.Variants images = AlbumImages.getArtist(aItem.id);
+            return images != null ? images.urlFor(aTargetPx) : aItem.imageUrl;
+        }
     }
 
     // Specialization, that sets Track related stuff to the appropriate widget elements
@@ -82,5 +106,9 @@ public abstract class SpotifyItemAdapter<T extends SpotifyItem> extends ArrayAda
             TextView albumNameTextView = (TextView) convertView.findViewById(R.id.list_item_album_name);
             albumNameTextView.setText(aItem.albumName);
         }
+        @Override protected String getImageUrl(SpotifyItem.Track aItem, int aTargetPx) {
+            AlbumImages.Variants images = AlbumImages.get(aItem.albumId);
+            return images != null ? images.urlFor(aTargetPx) : aItem.imageUrl;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package com.udacity.lesson.nano.streamapp;
+
+import android.app.Application;
+
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyRequester;
+
+/**
+ * Hands the memory of the data layer to the {@code MemoryBudget}, whichever screen the process is started for.
+ */
+public class StreamApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        registerWith(MemoryBudget.getInstance(this), SpotifyRequester.getInstance(this));
+    }
+
+    // the results in memory and the catalog give their memory back, when it runs low. the catalog is only dropped as
+    // a whole, once the process is about to be killed, and loaded again as soon as the app is used again
+    private static void registerWith(MemoryBudget aBudget, final SpotifyRequester aRequester) {
+        aBudget.register("responses", new MemoryBudget.Trimmable() {
+            @Override
+            public long getSizeBytes() {
+                return aRequester.getCacheStats().memoryBytes;
+            }
+
+            @Override
+            public long getMaxSizeBytes() {
+                return aRequester.getResponseCacheMaxBytes();
+            }
+
+            @Override
+            public void trimTo(double aFraction) {
+                aRequester.trimResponseCache(aFraction);
+            }
+        });
+        aBudget.register("catalog", new MemoryBudget.Trimmable() {
+            private boolean mUnloaded;
+
+            @Override
+            public long getSizeBytes() {
+                return aRequester.getCatalog().estimateBytes();
+            }
+
+            @Override
+            public long getMaxSizeBytes() {
+                return getSizeBytes(); // as many items as it has seen, up to its limits
+            }
+
+            @Override
+            public void trimTo(double aFraction) {
+                if (aFraction == 0 && !mUnloaded) {
+                    mUnloaded = true;
+                    aRequester.unloadCatalog();
+                } else if (aFraction > 0 && mUnloaded) {
+                    mUnloaded = false;
+                    aRequester.reloadCatalog();
+                }
+            }
+        });
+    }
+}
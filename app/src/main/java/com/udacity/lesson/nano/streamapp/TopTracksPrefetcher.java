@@ -0,0 +1,113 @@
+package com.udacity.lesson.nano.streamapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyItem;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyRequest;
+import com.udacity.lesson.nano.streamapp.spotifydata.SpotifyRequester;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Speculatively fetches the top tracks of the leading artist results.
+ * <p/>
+ * The user almost always taps one of the first rows, so by the time the DetailActivityFragment asks for the top
+ * tracks, they are already in the cache of the {@code SpotifyRequester} (or at least on their way). Prefetches run
+ * with background priority and are cancelled as soon as a new search result replaces the old one.
+ * <p/>
+ * On metered networks only a limited number of prefetches is allowed per session - by default none at all. Only the
+ * prefetches actually sent count, not the ones answered by the caches or cancelled before.
+ */
+class TopTracksPrefetcher {
+
+    private static final String LOG_TAG = TopTracksPrefetcher.class.getSimpleName();
+
+    // shared by all instances, so the budget is not reset by a screen rotation
+    private static int meteredPrefetches;
+
+    private final SpotifyRequester mRequester;
+    private final ConnectivityManager mConnectivityManager;
+    private final int mArtistCount;
+    private final int mMeteredBudget;
+
+    private final List<SpotifyRequest<SpotifyItem.Track>> mPending = new ArrayList<>();
+
+    // charges the metered prefetches as they are sent
+    private final SpotifyRequester.NetworkPermit mMeteredPermit = new SpotifyRequester.NetworkPermit() {
+        @Override
+        public boolean tryAcquire() {
+            synchronized (TopTracksPrefetcher.class) {
+                if (meteredPrefetches >= mMeteredBudget) {
+                    Log.d(LOG_TAG, "metered network, prefetch budget of " + mMeteredBudget + " used up");
+                    return false;
+                }
+                meteredPrefetches++;
+                return true;
+            }
+        }
+    };
+
+    TopTracksPrefetcher(Context aContext, SpotifyRequester aRequester) {
+        this(aContext, aRequester, aContext.getResources().getInteger(R.integer.prefetch_artist_count),
+                aContext.getResources().getInteger(R.integer.prefetch_metered_budget));
+    }
+
+    /**
+     * @param aArtistCount   number of leading artists, whose top tracks are prefetched
+     * @param aMeteredBudget number of prefetches allowed per session on a metered network
+     */
+    TopTracksPrefetcher(Context aContext, SpotifyRequester aRequester, int aArtistCount, int aMeteredBudget) {
+        mRequester = aRequester;
+        mConnectivityManager = (ConnectivityManager) aContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mArtistCount = aArtistCount;
+        mMeteredBudget = aMeteredBudget;
+    }
+
+    /**
+     * Replaces any pending prefetch with the ones for the leading artists of {@code aArtists}
+     *
+     * @param aArtists search result, most popular first
+     */
+    void prefetch(List<SpotifyItem.Artist> aArtists) {
+        cancel();
+
+        NetworkInfo network = mConnectivityManager.getActiveNetworkInfo();
+        if (network == null || !network.isConnected()) {
+            return;
+        }
+        boolean metered = ConnectivityManagerCompat.isActiveNetworkMetered(mConnectivityManager);
+
+        int count = Math.min(mArtistCount, aArtists.size());
+        for (int i = 0; i < count; i++) {
+            String artistId = aArtists.get(i).id;
+            if (artistId == null) {
+                continue;
+            }
+            if (metered && isMeteredBudgetUsedUp()) {
+                return; // none of them could be sent anyway
+            }
+            mPending.add(mRequester.prefetchTopTracks(artistId, metered ? mMeteredPermit : null));
+        }
+    }
+
+    private boolean isMeteredBudgetUsedUp() {
+        synchronized (TopTracksPrefetcher.class) {
+            return meteredPrefetches >= mMeteredBudget;
+        }
+    }
+
+    /**
+     * Cancels every prefetch, that has not been sent yet
+     */
+    void cancel() {
+        for (SpotifyRequest<SpotifyItem.Track> request : mPending) {
+            request.cancel();
+        }
+        mPending.clear();
+    }
+}
@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.os.Binder;
+import android.os.Build;
 import android.os.IBinder;
 import android.util.Log;
 import android.widget.Toast;
@@ -24,13 +25,23 @@ import java.util.concurrent.Executors;
  * a song.
  * <p/>
  * Provides a simple public API for controlling the player from outside.
+ * <p/>
+ * The likely next track can be handed in with {@link #prepareNext}. It is prepared in a second MediaPlayer while the
+ * current one plays, and swapped in without any delay when it is asked for or the current track completes. The two
+ * players are created once and swap roles, there are never more than two of them.
  */
 public class PlayerService extends Service {
 
     private final static String TAG = PlayerService.class.getSimpleName();
 
     private final PlayerServiceBinder binder = new PlayerServiceBinder();
-    private MediaPlayer mediaPlayer;
+    private volatile MediaPlayer mediaPlayer; // the current track
+
+    // the next track, prepared ahead of time. null if there is none
+    private MediaPlayer nextPlayer;
+    private SpotifyItem.Track nextTrack;
+    private boolean isNextPrepared;
+    private boolean isNextLinked; // set as the next player of the current one, which starts it on completion
 
     private PlayerServiceListener listener; // currently only one listener is supported
     private SpotifyItem.Track currentTrack; // and only one song at a time is kept track of
@@ -84,21 +95,29 @@ public class PlayerService extends Service {
     @Override
     public void onCreate() {
         Log.v(TAG, "onCreate()");
-        mediaPlayer = new MediaPlayer();
-        mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
         MediaPlayerListener listener = new MediaPlayerListener();
-        mediaPlayer.setOnCompletionListener(listener);
-        mediaPlayer.setOnPreparedListener(listener);
-        mediaPlayer.setOnErrorListener(listener);
-        mediaPlayer.setOnSeekCompleteListener(listener);
+        mediaPlayer = createMediaPlayer(listener);
+        nextPlayer = createMediaPlayer(listener);
         executor.execute(progressTracker);
     }
 
+    // the only place players are created, once for each role
+    private static MediaPlayer createMediaPlayer(MediaPlayerListener aListener) {
+        MediaPlayer player = new MediaPlayer();
+        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        player.setOnCompletionListener(aListener);
+        player.setOnPreparedListener(aListener);
+        player.setOnErrorListener(aListener);
+        player.setOnSeekCompleteListener(aListener);
+        return player;
+    }
+
     @Override
     public void onDestroy() {
         executor.shutdownNow();
         stop();
         mediaPlayer.release();
+        nextPlayer.release();
     }
 
     // only supports a single listener ATM
@@ -115,9 +134,13 @@ public class PlayerService extends Service {
 
     public void play(SpotifyItem.Track aTrack) {
         Log.v(TAG, "starting playback");
-        if (aTrack != currentTrack) {
+        if (aTrack != currentTrack && aTrack == nextTrack) {
+            stop();
+            swapInNext();
+        } else if (aTrack != currentTrack) {
             currentTrack = aTrack;
             stop();
+            unlinkNext();
             String url = currentTrack.trackUrl;
             try {
                 mediaPlayer.reset();
@@ -141,6 +164,70 @@ public class PlayerService extends Service {
         }
     }
 
+    /**
+     * Prepares {@code aTrack} in the background, so that it starts right away once it is played, e.g. the track after
+     * the current one. Replaces the track prepared before.
+     */
+    public void prepareNext(SpotifyItem.Track aTrack) {
+        if (aTrack == nextTrack || aTrack == currentTrack || aTrack == null) {
+            return;
+        }
+        clearNext();
+        try {
+            nextPlayer.setDataSource(aTrack.trackUrl);
+            Log.d(TAG, "prepareAsync() of the next track");
+            nextPlayer.prepareAsync();
+            nextTrack = aTrack;
+        } catch (IOException e) {
+            Log.w(TAG, "cannot prepare the next track: " + e.getMessage());
+            nextPlayer.reset();
+        }
+    }
+
+    // the current player is recycled for the next track to come
+    private void swapInNext() {
+        unlinkNext();
+        MediaPlayer previous = mediaPlayer;
+        mediaPlayer = nextPlayer;
+        nextPlayer = previous;
+        nextPlayer.reset();
+        currentTrack = nextTrack;
+        nextTrack = null;
+        isFinished = false;
+        position = 0;
+        if (isNextPrepared) {
+            isNextPrepared = false;
+            isPreparing = false;
+            mediaPlayer.start(); // a no-op, if it has already been started as the next player
+            notifyStarted(mediaPlayer.getDuration());
+        } else {
+            isPreparing = true; // started by onPrepared()
+        }
+    }
+
+    private void clearNext() {
+        unlinkNext();
+        nextPlayer.reset();
+        nextTrack = null;
+        isNextPrepared = false;
+    }
+
+    // only while the current player is prepared and has not completed yet
+    private void linkNext() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && isNextPrepared && !isNextLinked &&
+                !isPreparing && !isFinished) {
+            mediaPlayer.setNextMediaPlayer(nextPlayer);
+            isNextLinked = true;
+        }
+    }
+
+    private void unlinkNext() {
+        if (isNextLinked) {
+            mediaPlayer.setNextMediaPlayer(null);
+            isNextLinked = false;
+        }
+    }
+
     /**
      * Pause or unpause depending on the current state
      */
@@ -188,9 +275,16 @@ public class PlayerService extends Service {
             MediaPlayer.OnErrorListener {
 
         @Override public void onPrepared(MediaPlayer mp) {
+            if (mp != mediaPlayer) {
+                Log.v(TAG, "onPrepared() of the next track");
+                isNextPrepared = true;
+                linkNext(); // starts without any gap once the current one completes
+                return;
+            }
             Log.v(TAG, "onPrepared()");
             isFinished = false;
             isPreparing = false;
+            linkNext();
 
             // if this was done as part of a restart after the playback had already finished
             // we do not start right away, but seek to the target position and resume
@@ -205,10 +299,20 @@ public class PlayerService extends Service {
         }
         @Override public void onCompletion(MediaPlayer mp) {
             Log.v(TAG, "onCompletion()");
+            if (mp == mediaPlayer && nextTrack != null) {
+                notifyFinished();
+                swapInNext();
+                return;
+            }
             isFinished = true;
             notifyFinished();
         }
         @Override public boolean onError(MediaPlayer mp, int what, int extra) {
+            if (mp != mediaPlayer) { // the user has not asked for it yet, maybe never will
+                Log.v(TAG, "onError() of the next track");
+                clearNext();
+                return true;
+            }
             Log.v(TAG, "onError()");
             notifyFinished();
             Toast.makeText(getApplicationContext(),
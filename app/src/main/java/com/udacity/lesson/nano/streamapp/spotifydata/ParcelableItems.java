@@ -0,0 +1,101 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Android adapter that passes a list of {@code SpotifyItem}s around as Intent or {@code Bundle} data.
+ * <p/>
+ * The items themselves live in the platform independent core module and know nothing about {@code Parcel}s.
+ */
+public class ParcelableItems implements Parcelable {
+
+    private static final int TYPE_ARTIST = 1;
+    private static final int TYPE_TRACK = 2;
+
+    private final List<? extends SpotifyItem> mItems;
+
+    public ParcelableItems(List<? extends SpotifyItem> aItems) {
+        mItems = aItems;
+    }
+
+    /**
+     * @return the unmodifiable items, of the type they were put in with
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends SpotifyItem> List<T> getItems() {
+        return Collections.unmodifiableList((List<T>) mItems);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mItems.size());
+        for (SpotifyItem item : mItems) {
+            if (item instanceof SpotifyItem.Artist) {
+                SpotifyItem.Artist artist = (SpotifyItem.Artist) item;
+                dest.writeInt(TYPE_ARTIST);
+                writeCommon(dest, artist);
+                dest.writeString(artist.id);
+            } else if (item instanceof SpotifyItem.Track) {
+                SpotifyItem.Track track = (SpotifyItem.Track) item;
+                dest.writeInt(TYPE_TRACK);
+                writeCommon(dest, track);
+                dest.writeString(track.albumName);
+                dest.writeString(track.trackUrl);
+                dest.writeString(track.largeImageUrl);
+                dest.writeInt(track.durationMs);
+                dest.writeString(track.albumId);
+            } else {
+                throw new IllegalArgumentException("unsupported item: " + item.getClass());
+            }
+        }
+    }
+
+    private static void writeCommon(Parcel dest, SpotifyItem aItem) {
+        dest.writeInt(aItem.popularity);
+        dest.writeString(aItem.imageUrl);
+        dest.writeString(aItem.name);
+    }
+
+    // album name and images are shared with the other tracks of the album instead of copied for every one of them
+    public static final Parcelable.Creator<ParcelableItems> CREATOR = new Parcelable.Creator<ParcelableItems>() {
+        @Override
+        public ParcelableItems createFromParcel(Parcel in) {
+            int size = in.readInt();
+            List<SpotifyItem> items = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int type = in.readInt();
+                int popularity = in.readInt();
+                String imageUrl = StringPool.intern(in.readString());
+                String name = in.readString();
+                if (type == TYPE_ARTIST) {
+                    String id = in.readString();
+                    items.add(new SpotifyItem.Artist(name, imageUrl, popularity, id));
+                } else {
+                    String albumName = StringPool.intern(in.readString());
+                    String trackUrl = in.readString();
+                    String largeImageUrl = StringPool.intern(in.readString());
+                    int durationMs = in.readInt();
+                    String albumId = StringPool.intern(in.readString());
+                    items.add(new SpotifyItem.Track(name, imageUrl, popularity, albumName, trackUrl, largeImageUrl,
+                            durationMs, albumId));
+                }
+            }
+            return new ParcelableItems(items);
+        }
+
+        @Override
+        public ParcelableItems[] newArray(int size) {
+            return new ParcelableItems[size];
+        }
+    };
+}
@@ -0,0 +1,212 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Process;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.udacity.lesson.nano.streamapp.R;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kaaes.spotify.webapi.android.SpotifyApi;
+import retrofit.client.Client;
+import retrofit.client.OkClient;
+import retrofit.client.Request;
+import retrofit.client.Response;
+
+/**
+ * The HTTP stack the {@code SpotifyRequester} sends its requests with: a single OkHttp client with a pool of
+ * keep-alive connections, and two sets of network threads executing the blocking calls.
+ * <p/>
+ * Interactive requests (what the user is waiting for) and background requests (prefetches) get separate threads, so
+ * a search never has to wait behind a prefetch. The number of requests sent to the same host at a time is limited
+ * across both of them.
+ */
+public class SpotifyHttpStack {
+
+    /**
+     * Tuning of the stack, the defaults are those of {@code res/values/http.xml}
+     */
+    public static class Config {
+        int interactiveThreads = 2;
+        int backgroundThreads = 1;
+        int maxRequestsPerHost = 3;
+        int maxIdleConnections = 3;
+        long keepAliveMs = TimeUnit.MINUTES.toMillis(5);
+        long connectTimeoutMs = TimeUnit.SECONDS.toMillis(10);
+        long readTimeoutMs = TimeUnit.SECONDS.toMillis(15);
+        String baseUrl = SpotifyApi.SPOTIFY_WEB_API_ENDPOINT;
+
+        public static Config fromResources(Context aContext) {
+            Resources res = aContext.getResources();
+            return new Config()
+                    .setBaseUrl(res.getString(R.string.spotify_api_base_url))
+                    .setThreads(res.getInteger(R.integer.http_interactive_threads),
+                            res.getInteger(R.integer.http_background_threads))
+                    .setMaxRequestsPerHost(res.getInteger(R.integer.http_max_requests_per_host))
+                    .setConnectionPool(res.getInteger(R.integer.http_max_idle_connections),
+                            TimeUnit.SECONDS.toMillis(res.getInteger(R.integer.http_keep_alive_seconds)))
+                    .setTimeouts(TimeUnit.SECONDS.toMillis(res.getInteger(R.integer.http_connect_timeout_seconds)),
+                            TimeUnit.SECONDS.toMillis(res.getInteger(R.integer.http_read_timeout_seconds)));
+        }
+
+        public Config setThreads(int aInteractive, int aBackground) {
+            interactiveThreads = Math.max(1, aInteractive);
+            backgroundThreads = Math.max(1, aBackground);
+            return this;
+        }
+
+        public Config setMaxRequestsPerHost(int aMaxRequests) {
+            maxRequestsPerHost = Math.max(1, aMaxRequests);
+            return this;
+        }
+
+        public Config setConnectionPool(int aMaxIdleConnections, long aKeepAliveMs) {
+            maxIdleConnections = Math.max(0, aMaxIdleConnections);
+            keepAliveMs = aKeepAliveMs;
+            return this;
+        }
+
+        public Config setTimeouts(long aConnectTimeoutMs, long aReadTimeoutMs) {
+            connectTimeoutMs = aConnectTimeoutMs;
+            readTimeoutMs = aReadTimeoutMs;
+            return this;
+        }
+
+        /**
+         * @param aBaseUrl where the Spotify Web API is, e.g. a local stand-in to measure against
+         */
+        public Config setBaseUrl(String aBaseUrl) {
+            baseUrl = aBaseUrl;
+            return this;
+        }
+    }
+
+    private static SpotifyHttpStack httpStack;
+
+    private final OkHttpClient mOkHttpClient;
+    private final Client mClient;
+    private final String mBaseUrl;
+    private final Executor mInteractiveExecutor;
+    private final Executor mBackgroundExecutor;
+
+    public SpotifyHttpStack(Config aConfig) {
+        mOkHttpClient = new OkHttpClient();
+        mOkHttpClient.setConnectionPool(new ConnectionPool(aConfig.maxIdleConnections, aConfig.keepAliveMs));
+        mOkHttpClient.setConnectTimeout(aConfig.connectTimeoutMs, TimeUnit.MILLISECONDS);
+        mOkHttpClient.setReadTimeout(aConfig.readTimeoutMs, TimeUnit.MILLISECONDS);
+        // the limits also apply to anybody using the client asynchronously
+        mOkHttpClient.getDispatcher().setMaxRequestsPerHost(aConfig.maxRequestsPerHost);
+
+        mClient = new PerHostLimitingClient(new OkClient(mOkHttpClient), aConfig.maxRequestsPerHost);
+        mBaseUrl = aConfig.baseUrl;
+        mInteractiveExecutor = createExecutor("SpotifyNetwork", aConfig.interactiveThreads,
+                Process.THREAD_PRIORITY_DEFAULT);
+        mBackgroundExecutor = createExecutor("SpotifyPrefetch", aConfig.backgroundThreads,
+                Process.THREAD_PRIORITY_BACKGROUND);
+    }
+
+    /**
+     * @return the stack shared by everything talking to Spotify, configured from the resources on first use
+     */
+    public static synchronized SpotifyHttpStack getInstance(Context aContext) {
+        if (httpStack == null) {
+            httpStack = new SpotifyHttpStack(Config.fromResources(aContext.getApplicationContext()));
+        }
+        return httpStack;
+    }
+
+    private static Executor createExecutor(final String aName, int aThreads, final int aPriority) {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(aPriority);
+                        r.run();
+                    }
+                }, aName + "-" + count.incrementAndGet());
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(aThreads, aThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return the shared OkHttp client, e.g. to share its connection pool
+     */
+    public OkHttpClient getOkHttpClient() {
+        return mOkHttpClient;
+    }
+
+    // the Retrofit client
+    Client getClient() {
+        return mClient;
+    }
+
+    // the endpoint of the Spotify Web API, without a trailing slash
+    String getBaseUrl() {
+        return mBaseUrl;
+    }
+
+    // executes the blocking calls the user is waiting for
+    Executor getInteractiveExecutor() {
+        return mInteractiveExecutor;
+    }
+
+    // executes the blocking calls of prefetches
+    Executor getBackgroundExecutor() {
+        return mBackgroundExecutor;
+    }
+
+    // the blocking calls bypass the OkHttp dispatcher, so we have to limit them per host ourselves
+    private static class PerHostLimitingClient implements Client {
+        private final Client mClient;
+        private final int mMaxRequestsPerHost;
+        private final Map<String, Semaphore> mPermits = new HashMap<>();
+
+        PerHostLimitingClient(Client aClient, int aMaxRequestsPerHost) {
+            mClient = aClient;
+            mMaxRequestsPerHost = aMaxRequestsPerHost;
+        }
+
+        private synchronized Semaphore permitsFor(String aUrl) {
+            String host = URI.create(aUrl).getHost();
+            Semaphore permits = mPermits.get(host);
+            if (permits == null) {
+                permits = new Semaphore(mMaxRequestsPerHost, true);
+                mPermits.put(host, permits);
+            }
+            return permits;
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            Semaphore permits = permitsFor(request.getUrl());
+            // held until the headers are in, the body is streamed afterwards
+            permits.acquireUninterruptibly();
+            try {
+                return mClient.execute(request);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+}
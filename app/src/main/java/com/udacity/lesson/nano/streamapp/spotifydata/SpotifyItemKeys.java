@@ -14,6 +14,8 @@ public class SpotifyItemKeys {
 
     public static final String TOP_TRACKS = "top.tracks";
 
+    public static final String TOP_TRACKS_KEY = "top.tracks.key";
+
     public final static String TRACK_NUMBER = "top.tracks.number";
 
     public final static String TRACK_DURATION = "top.tracks.duration";
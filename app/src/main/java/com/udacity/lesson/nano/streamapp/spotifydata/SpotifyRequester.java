@@ -1,26 +1,34 @@
 package com.udacity.lesson.nano.streamapp.spotifydata;
 
+import android.content.Context;
+import android.os.Process;
 import android.util.Log;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.stream.MalformedJsonException;
 
-import kaaes.spotify.webapi.android.SpotifyApi;
 import kaaes.spotify.webapi.android.SpotifyService;
-import kaaes.spotify.webapi.android.models.AlbumSimple;
-import kaaes.spotify.webapi.android.models.Artist;
-import kaaes.spotify.webapi.android.models.ArtistsPager;
-import kaaes.spotify.webapi.android.models.Image;
-import kaaes.spotify.webapi.android.models.Pager;
-import kaaes.spotify.webapi.android.models.Track;
-import kaaes.spotify.webapi.android.models.Tracks;
-import retrofit.Callback;
+import retrofit.RestAdapter;
+import retrofit.client.Client;
 import retrofit.RetrofitError;
+import retrofit.android.MainThreadExecutor;
 import retrofit.client.Response;
 
 /**
@@ -29,177 +37,675 @@ import retrofit.client.Response;
  * <p/>
  * "Fetch data from Spotify in the background using AsyncTask and The Spotify Web API Wrapper"
  * <p/>
- * I am not using the AsyncTask directly, as the Spotify Wrapper already creates an appropriate  background thread
- * for handling I/O
+ * I am not using the AsyncTask directly, instead the blocking calls are executed on the network threads of a
+ * {@code SpotifyHttpStack}. That way requests, which are still queued when nobody is interested anymore, are simply
+ * dropped (see {@code SpotifyRequest.cancel()}).
  * <p/>
  * see also this discussion thread: https://discussions.udacity.com/t/asynctask-vs-callbacks/21223
  * <p/>
- * Downside of this approach, though it is easier to implement is, that the calls to {@code Collection.sort()} and
- * {@code findBestImage()} are executed in the main-UI thread.
- * Changing to AsyncTask, would open the possibility to lets this code run in the background thread too, allowing the
- * main UI thread to spend more time with other instructions.
+ * The network thread streams the response body through the {@code SpotifyJsonDecoder}, which only keeps the fields we
+ * display, and hands the decoded items over to a small, bounded worker executor, where the
+ * {@code SpotifyResultProcessor} ranks and trims them. Only the finished (unmodifiable) list is posted back to
+ * the main UI thread through {@code SpotifyCallback.onUpdate()}.
+ * <p/>
+ * Finished lists are kept in a {@code SpotifyResponseCache}, so asking for the same artist or search phrase again is
+ * answered from memory (or disk) without going to the network. Requests that are already in flight are not issued
+ * a second time, the later callers are attached to the pending request instead (see {@code InFlightCalls}).
+ * <p/>
+ * How long each of these steps takes is recorded per endpoint in the {@code SpotifyMetrics}.
+ * <p/>
+ * Prefetches are sent by separate background threads, so they never hold up a request the user is waiting for. If
+ * the user asks for something, that is still queued as a prefetch, it is queued once more for the interactive threads,
+ * whichever gets to it first sends it.
  */
 public class SpotifyRequester {
 
     private static final String LOG_TAG = SpotifyRequester.class.getSimpleName();
-    private final static SpotifyRequester requester = new SpotifyRequester();
-    private final SpotifyService mSpotifyService;
+
+    /**
+     * Lets a prefetch go to the network, or not. Asked once, right before the prefetch is actually sent - not if it is
+     * answered by the caches, joins a request in flight, or is cancelled before it is sent
+     */
+    public interface NetworkPermit {
+        /**
+         * @return true, if the prefetch may be sent. Runs on a network thread
+         */
+        boolean tryAcquire();
+    }
+
+    private static SpotifyRequester requester;
+    private final SpotifyStreamingService mSpotifyService;
     private final Map<String, Object> queryMap;
+    private final String mCountry;
+
+    private final SpotifyResponseCache mCache;
+    private final SpotifyCatalog mCatalog;
+    private final InFlightCalls mInFlightCalls = new InFlightCalls();
+    private final SpotifyMetrics mMetrics = new SpotifyMetrics();
 
-    private SpotifyRequester() {
-        SpotifyApi api = new SpotifyApi();
-        mSpotifyService = api.getService();
+    // three attempts at most, waiting up to 0.5s and 1s in between. after five transient failures
+    // in a row we stop trying for 30s
+    private final RetryPolicy mRetryPolicy = new RetryPolicy(3, 500, TimeUnit.SECONDS.toMillis(4));
+    private final CircuitBreaker mCircuitBreaker = new CircuitBreaker(5, TimeUnit.SECONDS.toMillis(30));
+    private final ScheduledExecutorService mRetryScheduler = createRetryScheduler();
+
+    private final SpotifyResultProcessor mProcessor;
+    private final Executor mInteractiveExecutor; // executes the blocking Spotify calls the user is waiting for
+    private final Executor mBackgroundExecutor;  // executes the blocking Spotify calls of prefetches
+    private final Executor mWorkerExecutor;   // maps, ranks and trims the raw payloads
+    private final Executor mDeliveryExecutor; // delivers the finished lists, i.e. the main UI thread
+
+    // the worker has two threads at most, the result processing is CPU bound. its queue is not bounded: the disk
+    // lookups are queued from the main UI thread, which must never end up doing the work itself - and there are
+    // never many requests in flight anyway
+    private static final int WORKER_THREADS = 2;
+
+    // search results change more often than the top tracks of an artist
+    private static final long SEARCH_TTL_MS = TimeUnit.MINUTES.toMillis(15);
+    private static final long TOP_TRACKS_TTL_MS = TimeUnit.HOURS.toMillis(6);
+    // expired results are still shown (and refreshed) for that long, better than nothing on a bad connection
+    private static final long CACHE_MAX_STALE_MS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * Number of artists per page of a search, it is what Spotify returns by default
+     */
+    public static final int ARTIST_PAGE_SIZE = 20;
+
+    private static final int CACHE_MAX_ENTRIES = 64;
+    private static final long CACHE_MAX_MEMORY_BYTES = 512 * 1024;
+    private static final long CACHE_MAX_DISK_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * @param aHttpStack the stack to send the requests with, it determines how many requests are in flight at a time
+     */
+    public SpotifyRequester(Context aContext, SpotifyHttpStack aHttpStack) {
+        this(createService(aHttpStack.getClient(), aHttpStack.getBaseUrl()), new SpotifyResultProcessor(),
+                aHttpStack.getInteractiveExecutor(), aHttpStack.getBackgroundExecutor(),
+                createWorkerExecutor(), new MainThreadExecutor(),
+                new SpotifyResponseCache(CACHE_MAX_ENTRIES, CACHE_MAX_MEMORY_BYTES,
+                        new File(aContext.getCacheDir(), "spotify-responses"), CACHE_MAX_DISK_BYTES,
+                        CACHE_MAX_STALE_MS),
+                new SpotifyCatalog(new File(aContext.getFilesDir(), "spotify-catalog")));
+    }
+
+    // package private for testing, allows to inject a fake service and to observe the processing
+    SpotifyRequester(SpotifyStreamingService aService, SpotifyResultProcessor aProcessor,
+                     Executor aInteractiveExecutor, Executor aBackgroundExecutor, Executor aWorkerExecutor,
+                     Executor aDeliveryExecutor, SpotifyResponseCache aCache, SpotifyCatalog aCatalog) {
+        mSpotifyService = aService;
+        mProcessor = aProcessor;
+        mInteractiveExecutor = aInteractiveExecutor;
+        mBackgroundExecutor = aBackgroundExecutor;
+        mWorkerExecutor = aWorkerExecutor;
+        mDeliveryExecutor = aDeliveryExecutor;
+        mCache = aCache;
+        mCatalog = aCatalog;
+        mWorkerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mCatalog.load();
+            }
+        });
 
         // currently hard-coded Country setting
+        mCountry = Locale.getDefault().getCountry();
         Map<String, Object> map = new HashMap<>();
-        map.put(SpotifyService.COUNTRY, Locale.getDefault().getCountry());
+        map.put(SpotifyService.COUNTRY, mCountry);
         queryMap = Collections.unmodifiableMap(map);
     }
 
-    // use a single instance for all requests, limiting the amount of threads created
-    // since all information is obtained from the same server it should be sufficient to query sequentially.
-    // I read from the SpotifyApi source, that instantiating with the default constructor gives us
-    // a single thread, that handles the network I/O -> one server - one thread
-    // both the DetailActivityFragment and the MainActivityFragment use this instance
-    public static SpotifyRequester getInstance() {
-        return requester;
+    // same endpoints as the SpotifyApi wrapper, but we want the raw response body. package private for the load test
+    static SpotifyStreamingService createService(Client aClient, String aBaseUrl) {
+        return new RestAdapter.Builder()
+                .setEndpoint(aBaseUrl)
+                .setClient(aClient)
+                .build()
+                .create(SpotifyStreamingService.class);
     }
 
-    // compares items on based on their popularity
-    private final Comparator<SpotifyItem> popularityItemComparator = new Comparator<SpotifyItem>() {
-        @Override
-        public int compare(SpotifyItem lhs, SpotifyItem rhs) {
-            return rhs.popularity - lhs.popularity;
-        }
-    };
+    // only waits for the delay of a retry, the request itself is sent by a network thread again
+    private static ScheduledExecutorService createRetryScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SpotifyRetry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.setKeepAliveTime(30, TimeUnit.SECONDS);
+        scheduler.allowCoreThreadTimeOut(true);
+        return scheduler;
+    }
+
+    private static Executor createWorkerExecutor() {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
 
-    private String findBestImage(List<Image> images, ImageMatcher aMatcher) {
-        Image image = null;
-        for (Image i : images) {
-            if (image == null || aMatcher.preferImage(i, image)) {
-                image = i;
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "SpotifyWorker-" + count.incrementAndGet());
             }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // use a single instance for all requests, limiting the amount of threads and connections created.
+    // both the DetailActivityFragment and the MainActivityFragment use this instance.
+    // the context is only needed for the configuration and for locating the cache directory on first use
+    public static synchronized SpotifyRequester getInstance(Context aContext) {
+        if (requester == null) {
+            Context context = aContext.getApplicationContext();
+            requester = new SpotifyRequester(context, SpotifyHttpStack.getInstance(context));
         }
-        return image == null ? null : image.url;
+        return requester;
     }
 
-    // unfortunately no Java8 atm :-(   https://discussions.udacity.com/t/java-8-for-android-development/20578
-    private interface ImageMatcher {
-        /**
-         * @return true, if aImage should be preferred aOverThisImage
-         */
-        boolean preferImage(Image aImage, Image aOverThisImage);
+    /**
+     * Shrinks the results kept in memory to {@code aFraction} of their full size, 1 restores it. The ones dropped are
+     * still on disk.
+     */
+    public void trimResponseCache(double aFraction) {
+        mCache.setMaxMemoryBytes((long) (CACHE_MAX_MEMORY_BYTES * aFraction));
     }
 
+    /**
+     * @return the bytes the results in memory may take at the moment
+     */
+    public long getResponseCacheMaxBytes() {
+        return mCache.getMaxMemoryBytes();
+    }
 
-    public void queryArtist(final String aArtistName, final SpotifyCallback<SpotifyItem.Artist> aCallback) {
+    /**
+     * Drops the catalog from memory, in the background. Searching it finds nothing until {@link #reloadCatalog()}.
+     */
+    public void unloadCatalog() {
+        mWorkerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mCatalog.unload();
+            }
+        });
+    }
 
-        // for the artists we use the smallest image we can find
-        final ImageMatcher matcher = new ImageMatcher() {
+    /**
+     * Reads the catalog back from disk, in the background
+     */
+    public void reloadCatalog() {
+        mWorkerExecutor.execute(new Runnable() {
             @Override
-            public boolean preferImage(Image aImage, Image aOverThisImage) {
-                // simple size check, we use the smallest one to reduce amount of data transferred over
-                // the network. still could be slightly incorrect, if the smaller image had an uncompressed
-                // format like BMP while a larger one was jpg or png
-                return aImage.width * aImage.height < aOverThisImage.width * aOverThisImage.height;
+            public void run() {
+                mCatalog.load();
             }
-        };
+        });
+    }
 
-        mSpotifyService.searchArtists(aArtistName, new Callback<ArtistsPager>() {
+    /**
+     * @return every artist and track received so far, to search them offline
+     */
+    public SpotifyCatalog getCatalog() {
+        return mCatalog;
+    }
 
-            @Override
-            public void success(ArtistsPager artistsPager, Response response) {
-                Log.d(LOG_TAG, "requesting artist " + aArtistName + " succeeded with: " + response);
+    public SpotifyResponseCache.Stats getCacheStats() {
+        return mCache.getStats();
+    }
+
+    /**
+     * @return latency and payload metrics of the endpoints, e.g. to dump them into a file
+     */
+    public SpotifyMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * @return number of requests, that were not sent to the network because an identical one was in flight
+     */
+    public long getSavedNetworkCalls() {
+        return mInFlightCalls.getSavedCount();
+    }
+
+    /**
+     * @return number of requests, that had to be issued as nothing identical was in flight
+     */
+    public long getIssuedNetworkCalls() {
+        return mInFlightCalls.getIssuedCount();
+    }
+
+    /**
+     * @return number of issued requests, that were cancelled before they were sent to the network
+     */
+    public long getCancelledNetworkCalls() {
+        return mInFlightCalls.getCancelledCount();
+    }
+
+    /**
+     * The parts, that differ between the Spotify endpoints we query
+     *
+     * @param <Q> type of the query
+     * @param <T> type of the finished items
+     */
+    private abstract class Endpoint<Q, T extends SpotifyItem> {
+        final String description;
+        final long ttlMs;
+        final SpotifyMetrics.EndpointMetrics metrics;
+
+        Endpoint(String aDescription, String aName, long aTtlMs) {
+            description = aDescription;
+            ttlMs = aTtlMs;
+            metrics = mMetrics.forEndpoint(aName);
+        }
+
+        // blocking call to the Spotify service, the body is not read yet
+        abstract Response fetch(Q aQuery) throws RetrofitError;
+
+        // runs on the network thread while the body is streamed in
+        abstract List<T> decode(InputStream aBody) throws IOException;
+
+        // runs on the worker executor
+        abstract List<T> process(List<T> aDecoded);
+    }
+
+    // a page of an artist search
+    private static class PageQuery {
+        final String phrase;
+        final int offset;
+        final int limit;
+
+        PageQuery(String aPhrase, int aOffset, int aLimit) {
+            phrase = aPhrase;
+            offset = aOffset;
+            limit = aLimit;
+        }
+
+        @Override
+        public String toString() {
+            return phrase + " [" + offset + "+" + limit + "]";
+        }
+    }
+
+    private final Endpoint<PageQuery, SpotifyItem.Artist> searchArtists =
+            new Endpoint<PageQuery, SpotifyItem.Artist>("artist", SpotifyResponseCache.ENDPOINT_SEARCH_ARTISTS,
+                    SEARCH_TTL_MS) {
+                @Override
+                Response fetch(PageQuery aQuery) {
+                    return mSpotifyService.searchArtists(aQuery.phrase, aQuery.offset, aQuery.limit);
+                }
+
+                @Override
+                List<SpotifyItem.Artist> decode(InputStream aBody) throws IOException {
+                    return mProcessor.decodeArtists(aBody);
+                }
+
+                @Override
+                List<SpotifyItem.Artist> process(List<SpotifyItem.Artist> aDecoded) {
+                    return mProcessor.rankArtists(aDecoded);
+                }
+            };
 
-                List<SpotifyItem.Artist> list = new ArrayList<>();
+    private final Endpoint<String, SpotifyItem.Track> topTracks =
+            new Endpoint<String, SpotifyItem.Track>("tracks for", SpotifyResponseCache.ENDPOINT_TOP_TRACKS,
+                    TOP_TRACKS_TTL_MS) {
+                @Override
+                Response fetch(String aQuery) {
+                    return mSpotifyService.getArtistTopTrack(aQuery, queryMap);
+                }
+
+                @Override
+                List<SpotifyItem.Track> decode(InputStream aBody) throws IOException {
+                    return mProcessor.decodeTopTracks(aBody);
+                }
 
-                Pager<Artist> artistPager = artistsPager.artists;
-                for (Artist artist : artistPager.items) {
-                    list.add(new SpotifyItem.Artist(artist.name,
-                            findBestImage(artist.images, matcher),
-                            artist.popularity,
-                            artist.id));
+                @Override
+                List<SpotifyItem.Track> process(List<SpotifyItem.Track> aDecoded) {
+                    return mProcessor.rankTopTracks(aDecoded);
                 }
+            };
+
+    /**
+     * Searches for the first page of artists
+     */
+    public SpotifyRequest<SpotifyItem.Artist> queryArtist(String aArtistName,
+                                                          SpotifyCallback<SpotifyItem.Artist> aCallback) {
+        return queryArtistPage(aArtistName, 0, ARTIST_PAGE_SIZE, aCallback);
+    }
 
-                Collections.sort(list, popularityItemComparator);
-                aCallback.onUpdate(list);
+    /**
+     * Searches for a page of artists. Each page is ranked by popularity on its own, so appending a later page never
+     * reorders the artists already shown. A page with less than {@code aLimit} artists is the last one.
+     *
+     * @param aOffset index of the first artist of the page
+     * @param aLimit  maximum number of artists in the page, at most 50
+     */
+    public SpotifyRequest<SpotifyItem.Artist> queryArtistPage(String aArtistName, int aOffset, int aLimit,
+                                                              SpotifyCallback<SpotifyItem.Artist> aCallback) {
+        String key = SpotifyResponseCache.searchArtistsKey(aArtistName, mCountry, aOffset, aLimit);
+        return query(searchArtists, new PageQuery(aArtistName, aOffset, aLimit), key, aCallback, false, null);
+    }
+
+    public SpotifyRequest<SpotifyItem.Track> queryTopTracks(String aArtistName,
+                                                            SpotifyCallback<SpotifyItem.Track> aCallback) {
+        String key = SpotifyResponseCache.topTracksKey(aArtistName, mCountry);
+        return query(topTracks, aArtistName, key, aCallback, false, null);
+    }
+
+    /**
+     * Fetches the top tracks of an artist with background priority into the cache, so a later
+     * {@code queryTopTracks()} for the same artist is answered right away
+     *
+     * @return the request, which should be cancelled once the prefetch is not needed anymore
+     */
+    public SpotifyRequest<SpotifyItem.Track> prefetchTopTracks(String aArtistId) {
+        return prefetchTopTracks(aArtistId, null);
+    }
+
+    /**
+     * Like {@link #prefetchTopTracks(String)}, but only sent if {@code aPermit} allows it
+     *
+     * @param aPermit asked before the prefetch goes to the network, or null to always send it
+     */
+    public SpotifyRequest<SpotifyItem.Track> prefetchTopTracks(String aArtistId, NetworkPermit aPermit) {
+        String key = SpotifyResponseCache.topTracksKey(aArtistId, mCountry);
+        return query(topTracks, aArtistId, key, new SpotifyCallback<SpotifyItem.Track>() {
+            @Override
+            public void onUpdate(List<SpotifyItem.Track> aItems, boolean aStale) {
+                // nothing to do, the result has already been cached
             }
 
             @Override
-            public void failure(RetrofitError error) {
-                Log.d(LOG_TAG, "requesting artist " + aArtistName + " failed with: " + error);
-                // could define a separate method to pass information about the error and display it to the user
-                // but there was nowhere specified, so we treat this condition simply as if no artist was found
-                aCallback.onUpdate(Collections.<SpotifyItem.Artist>emptyList());
+            public void onError(SpotifyError aError) {
+                // nobody is waiting for it
             }
-        });
+        }, true, aPermit);
     }
 
-    public void queryTopTracks(final String aArtistName, final SpotifyCallback<SpotifyItem.Track> aCallback) {
+    // memory cache -> pending request -> disk cache -> network
+    private <Q, T extends SpotifyItem> SpotifyRequest<T> query(final Endpoint<Q, T> aEndpoint, final Q aQuery,
+                                                               String aKey, SpotifyCallback<T> aCallback,
+                                                               boolean aBackground, final NetworkPermit aPermit) {
+        SpotifyRequest<T> request = new SpotifyRequest<>(aKey, aCallback, mInFlightCalls);
+
+        SpotifyResponseCache.Hit<T> cached = mCache.getFromMemory(aKey);
+        if (cached != null) {
+            deliver(request, cached.items, cached.stale, aEndpoint.metrics);
+            if (!cached.stale) {
+                Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " answered from memory");
+                return request;
+            }
+            Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " answered stale, refreshing");
+        }
+        // once the user has something to look at, the refresh is no more urgent than a prefetch
+        boolean background = aBackground || cached != null;
+        final boolean lookupDisk = cached == null;
+
+        final InFlightCalls.Call call = mInFlightCalls.attach(request, background);
+        if (call == null) {
+            Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " attached to pending request");
+            if (!background) {
+                InFlightCalls.Call promoted = mInFlightCalls.promote(aKey);
+                Runnable fetchTask = promoted != null ? promoted.fetchTask : null;
+                if (fetchTask != null) { // otherwise it is queued with the new priority in the first place
+                    mInteractiveExecutor.execute(fetchTask);
+                }
+            }
+            return request;
+        }
 
-        // for the track list we use a small image, but prefer one with 200x200
-        final ImageMatcher matcher = new ImageMatcher() {
+        mWorkerExecutor.execute(new Runnable() {
             @Override
-            public boolean preferImage(Image aImage, Image aOverThisImage) {
-                /*
-                 * Quote from the "Spotify Streamer, Stage 1: Implementation Guide"
-                 *  "Album art thumbnail (large (640px for Now Playing screen) and small (200px for list items)).
-                 *   If the image size does not exist in the API response, you are free to choose whatever size is
-                 *   available.)"
-                 */
-                if (aImage.width == 200 && aImage.height == 200) {
-                    return true;  // this wins if we have a 200x200 at hand
+            public void run() {
+                SpotifyResponseCache.Hit<T> fromDisk = lookupDisk ? mCache.<T>getFromDisk(call.key) : null;
+                if (fromDisk != null && !fromDisk.stale) {
+                    Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " answered from disk");
+                    deliverAll(call, fromDisk.items, aEndpoint.metrics);
+                    return;
                 }
-                if (aOverThisImage.width == 200 && aOverThisImage.height == 200) {
-                    return false; // the other image wins if a 200x200 was already found
+                if (fromDisk != null) {
+                    Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " answered stale from disk" +
+                            ", refreshing");
+                    deliverStale(call, fromDisk.items, aEndpoint.metrics);
                 }
-                // otherwise keep the smaller one
-                return aImage.width * aImage.height < aOverThisImage.width * aOverThisImage.height;
+                call.fetchTask = new Runnable() {
+                    @Override
+                    public void run() {
+                        fetch(aEndpoint, aQuery, call, aPermit);
+                    }
+                };
+                call.queuedAtNs = System.nanoTime();
+                executorFor(call).execute(call.fetchTask);
             }
-        };
+        });
+        return request;
+    }
+
+    private Executor executorFor(InFlightCalls.Call aCall) {
+        return aCall.isBackground() ? mBackgroundExecutor : mInteractiveExecutor;
+    }
+
+    // runs on a network thread
+    private <Q, T extends SpotifyItem> void fetch(final Endpoint<Q, T> aEndpoint, final Q aQuery,
+                                                  final InFlightCalls.Call aCall, NetworkPermit aPermit) {
+        if (!aCall.tryStart()) {
+            return; // it was queued once more after a promotion, and the other one was faster
+        }
+        // charged only now, that it is really going out. unless the user has asked for it in the meantime
+        if (aPermit != null && !aCall.isCancelled() && !aPermit.tryAcquire() && mInFlightCalls.drop(aCall)) {
+            Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " not sent, no permit");
+            deliverError(aCall, new SpotifyError(SpotifyError.Kind.UNAVAILABLE, 0, -1));
+            return;
+        }
+        aEndpoint.metrics.queueWaitUs.record(toMicros(System.nanoTime() - aCall.queuedAtNs));
+        attempt(aEndpoint, aQuery, aCall, 1);
+    }
 
-        final ImageMatcher largeMatcher = new ImageMatcher() {
+    // sends the request once, runs on a network thread
+    private <Q, T extends SpotifyItem> void attempt(final Endpoint<Q, T> aEndpoint, final Q aQuery,
+                                                    final InFlightCalls.Call aCall, int aAttempt) {
+        if (aCall.isCancelled()) {
+            Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " cancelled");
+            return;
+        }
+        final SpotifyMetrics.EndpointMetrics metrics = aEndpoint.metrics;
+        if (!mCircuitBreaker.allowRequest()) {
+            Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " not sent, the API is failing");
+            metrics.recordError(SpotifyError.Kind.UNAVAILABLE);
+            deliverError(aCall, new SpotifyError(SpotifyError.Kind.UNAVAILABLE, 0, -1));
+            return;
+        }
+
+        final List<T> decoded;
+        try {
+            long startNs = System.nanoTime();
+            Response response = aEndpoint.fetch(aQuery);
+            long fetchedNs = System.nanoTime();
+            metrics.networkUs.record(toMicros(fetchedNs - startNs));
+            decoded = decode(aEndpoint, response);
+            metrics.decodeUs.record(toMicros(System.nanoTime() - fetchedNs));
+        } catch (RetrofitError error) {
+            Response response = error.getResponse();
+            Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " failed with: " + error +
+                    " (reason=" + (response != null ? response.getReason() : "unknown") +
+                    " (, url=" + (response != null ? response.getUrl() : "unknown url") + ")");
+            onFailure(aEndpoint, aQuery, aCall, aAttempt, SpotifyError.from(error));
+            return;
+        } catch (IOException | RuntimeException error) {
+            // the JsonReader throws an IllegalStateException on unexpected tokens, a NumberFormatException on bad
+            // numbers. whatever the decoder throws, the call has to be completed, or everybody waits on it forever
+            Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " failed reading: " + error);
+            boolean malformed = error instanceof MalformedJsonException || error instanceof RuntimeException;
+            onFailure(aEndpoint, aQuery, aCall, aAttempt,
+                    new SpotifyError(malformed ? SpotifyError.Kind.CONVERSION : SpotifyError.Kind.NETWORK, 0, -1));
+            return;
+        }
+        Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " succeeded");
+        mCircuitBreaker.onSuccess();
+
+        mWorkerExecutor.execute(new Runnable() {
             @Override
-            public boolean preferImage(Image aImage, Image aOverThisImage) {
-                // find the largest
-                return aImage.width * aImage.height > aOverThisImage.width * aOverThisImage.height;
+            public void run() {
+                long startNs = System.nanoTime();
+                List<T> items;
+                try {
+                    items = aEndpoint.process(decoded);
+                } catch (RuntimeException error) {
+                    Log.w(LOG_TAG, "processing " + aEndpoint.description + " " + aQuery + " failed", error);
+                    metrics.recordError(SpotifyError.Kind.CONVERSION);
+                    deliverError(aCall, new SpotifyError(SpotifyError.Kind.CONVERSION, 0, -1));
+                    return;
+                }
+                metrics.processUs.record(toMicros(System.nanoTime() - startNs));
+                // cache first, so nobody issues the same request again in between
+                mCache.put(aCall.key, items, aEndpoint.ttlMs);
+                deliverAll(aCall, items, metrics);
+                mCatalog.add(items); // after delivering, it writes to disk
             }
-        };
+        });
+    }
 
-        mSpotifyService.getArtistTopTrack(aArtistName, queryMap, new Callback<Tracks>() {
+    // retries transient failures after a while, reports everything else
+    private <Q, T extends SpotifyItem> void onFailure(final Endpoint<Q, T> aEndpoint, final Q aQuery,
+                                                      final InFlightCalls.Call aCall, final int aAttempt,
+                                                      SpotifyError aError) {
+        aEndpoint.metrics.recordError(aError.kind);
+        if (aError.isTransient()) {
+            mCircuitBreaker.onFailure();
+        } else {
+            mCircuitBreaker.onSuccess(); // the API did answer, e.g. a 404 says nothing about its health
+        }
+        long delayMs = mRetryPolicy.nextDelayMs(aAttempt, aError);
+        if (delayMs < 0 || aCall.isCancelled()) {
+            deliverError(aCall, aError);
+            return;
+        }
+        Log.d(LOG_TAG, "requesting " + aEndpoint.description + " " + aQuery + " retried in " + delayMs + " ms");
+        aEndpoint.metrics.recordRetry();
+        // the network thread is not blocked while waiting, the retry is queued again once the delay has passed
+        mRetryScheduler.schedule(new Runnable() {
             @Override
-            public void success(Tracks tracks, Response response) {
-                Log.d(LOG_TAG, "requesting tracks for " + aArtistName + " succeeded with: " + response);
-
-                List<SpotifyItem.Track> list = new ArrayList<>();
-
-                for (Track track : tracks.tracks) {
-                    AlbumSimple album = track.album;
-
-                    // this could be a Settings Option, e.g. if you were able to log in
-                    // using a real account
-                    int duration = 30000; // (int)track.duration_ms;
-                    String url = track.preview_url;
-                    list.add(new SpotifyItem.Track(track.name,
-                            findBestImage(album.images, matcher),
-                            track.popularity, album.name, url,
-                            findBestImage(album.images, largeMatcher),
-                            duration));
-                }
+            public void run() {
+                executorFor(aCall).execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        attempt(aEndpoint, aQuery, aCall, aAttempt + 1);
+                    }
+                });
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
 
-                Collections.sort(list, popularityItemComparator);
-                final int maxSize = 10; // cap the result list to 10 elements at most
-                aCallback.onUpdate(list.size() <= maxSize ? list : list.subList(0, maxSize));
+    // streams the body through the decoder, and releases the connection afterwards
+    private static <T extends SpotifyItem> List<T> decode(Endpoint<?, T> aEndpoint, Response aResponse)
+            throws IOException {
+        if (aResponse.getBody() == null) {
+            return Collections.emptyList();
+        }
+        CountingInputStream body = new CountingInputStream(aResponse.getBody().in());
+        try {
+            return aEndpoint.decode(body);
+        } finally {
+            body.close();
+            aEndpoint.metrics.responseBytes.record(body.count);
+        }
+    }
+
+    private static long toMicros(long aNanos) {
+        return TimeUnit.NANOSECONDS.toMicros(aNanos);
+    }
+
+    // counts the bytes of the response body, while it is streamed through the decoder
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
             }
+            return b;
+        }
 
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    // posts the list to the callback on the delivery executor, unless the request got cancelled
+    private <T extends SpotifyItem> void deliver(final SpotifyRequest<T> aRequest, final List<T> aItems,
+                                                 final boolean aStale, final SpotifyMetrics.EndpointMetrics aMetrics) {
+        if (aStale) {
+            aRequest.staleDelivered = true;
+        }
+        final long postedNs = System.nanoTime();
+        mDeliveryExecutor.execute(new Runnable() {
             @Override
-            public void failure(RetrofitError error) {
-                Response response = error.getResponse();
-                Log.d(LOG_TAG, "requesting tracks for " + aArtistName + " failed with: " + error +
-                        " (reason=" + (response != null ? response.getReason() : "unknown") +
-                        " (, url=" + (response != null ? response.getUrl() : "unknown trackUrl") + ")");
-                aCallback.onUpdate(Collections.<SpotifyItem.Track>emptyList());
+            public void run() {
+                if (!aRequest.isCancelled()) {
+                    aRequest.callback.onUpdate(aItems, aStale);
+                    aMetrics.deliveryUs.record(toMicros(System.nanoTime() - postedNs));
+                }
             }
         });
     }
-}
\ No newline at end of file
+
+    // completes the in-flight call and posts the finished list to every attached request
+    private <T extends SpotifyItem> void deliverAll(InFlightCalls.Call aCall, List<T> aItems,
+                                                    SpotifyMetrics.EndpointMetrics aMetrics) {
+        List<SpotifyRequest<T>> requests = mInFlightCalls.complete(aCall);
+        for (SpotifyRequest<T> request : requests) {
+            deliver(request, aItems, false, aMetrics);
+        }
+    }
+
+    // posts stale results to every attached request, the call stays in flight to refresh them
+    private <T extends SpotifyItem> void deliverStale(InFlightCalls.Call aCall, List<T> aItems,
+                                                      SpotifyMetrics.EndpointMetrics aMetrics) {
+        List<SpotifyRequest<T>> requests = mInFlightCalls.requestsOf(aCall);
+        for (SpotifyRequest<T> request : requests) {
+            deliver(request, aItems, true, aMetrics);
+        }
+    }
+
+    // completes the in-flight call and reports the error to every attached request, that has nothing to show yet
+    private <T extends SpotifyItem> void deliverError(InFlightCalls.Call aCall, final SpotifyError aError) {
+        List<SpotifyRequest<T>> requests = mInFlightCalls.complete(aCall);
+        for (final SpotifyRequest<T> request : requests) {
+            if (request.staleDelivered) {
+                continue; // the stale results stand
+            }
+            mDeliveryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!request.isCancelled()) {
+                        request.callback.onError(aError);
+                    }
+                }
+            });
+        }
+    }
+}
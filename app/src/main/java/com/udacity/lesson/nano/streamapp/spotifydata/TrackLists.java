@@ -0,0 +1,96 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process repository of the track lists handed from one screen to the next.
+ * <p/>
+ * Instead of parceling the full list into every {@code Intent} and {@code Bundle}, a screen stores it here once and
+ * only passes the returned key. The key is small and stable: it keeps pointing to the same list, even if the tracks
+ * of the artist are updated in the meantime.
+ * <p/>
+ * The repository does not survive the process, so screens save {@link #encode(List)} along with the key in
+ * {@code onSaveInstanceState()}, and hand both to {@link #restore(String, byte[])}.
+ */
+public class TrackLists {
+
+    private static final String TAG = TrackLists.class.getSimpleName();
+
+    // a few screens deep is all we need, older lists are evicted
+    private static final int MAX_LISTS = 8;
+
+    // keys restored after the process died must not clash with new ones
+    private static final String PROCESS_TOKEN = Long.toString(System.currentTimeMillis(), 36);
+
+    private static final Map<String, List<SpotifyItem.Track>> sLists =
+            new LinkedHashMap<String, List<SpotifyItem.Track>>(MAX_LISTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<SpotifyItem.Track>> aEldest) {
+                    return size() > MAX_LISTS;
+                }
+            };
+
+    private static int sNextId;
+
+    /**
+     * @param aName e.g. the artist id, only to make the key readable in logs
+     * @return the key to pass on instead of the list
+     */
+    public static synchronized String put(String aName, List<SpotifyItem.Track> aTracks) {
+        String key = aName + "@" + PROCESS_TOKEN + "." + (sNextId++);
+        sLists.put(key, Collections.unmodifiableList(aTracks));
+        return key;
+    }
+
+    /**
+     * @return the unmodifiable list, or null if the key is unknown, e.g. because the process was restarted
+     */
+    public static synchronized List<SpotifyItem.Track> get(String aKey) {
+        return aKey == null ? null : sLists.get(aKey);
+    }
+
+    /**
+     * @return the list stored under {@code aKey}, otherwise the list decoded from {@code aFallback} which is then
+     * stored under {@code aKey} again. Null if neither is available.
+     */
+    public static synchronized List<SpotifyItem.Track> restore(String aKey, byte[] aFallback) {
+        List<SpotifyItem.Track> tracks = get(aKey);
+        if (tracks != null || aKey == null || aFallback == null) {
+            return tracks;
+        }
+        try {
+            tracks = SpotifyItemCodec.readItems(new DataInputStream(new ByteArrayInputStream(aFallback)));
+        } catch (IOException e) {
+            Log.w(TAG, "discarding the saved tracks of " + aKey, e);
+            return null;
+        }
+        sLists.put(aKey, tracks);
+        return tracks;
+    }
+
+    /**
+     * @return the compact encoding of {@code aTracks}, to be saved for {@link #restore(String, byte[])}
+     */
+    public static byte[] encode(List<SpotifyItem.Track> aTracks) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            SpotifyItemCodec.writeItems(new DataOutputStream(bytes), aTracks);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen, we write into memory
+        }
+        return bytes.toByteArray();
+    }
+
+    private TrackLists() {
+    } // cannot instantiate - static method helper class
+}
@@ -0,0 +1,94 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the benchmarks with allocation profiling and writes two reports:
+ * <ul>
+ * <li>the full JMH results as JSON, e.g. for the JMH visualizers</li>
+ * <li>a summary with one sorted line per benchmark and parameters: time and bytes allocated per call. It is checked
+ * in, so {@code git diff} shows what a commit did to the numbers.</li>
+ * </ul>
+ * Usage: {@code BenchmarkMain <summary file> <json file> [JMH options]}, e.g. a benchmark regex to run only those.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: BenchmarkMain <summary file> <json file> [JMH options]");
+            System.exit(1);
+        }
+        File summary = new File(args[0]);
+        File json = new File(args[1]);
+        String[] jmhArgs = new String[args.length - 2];
+        System.arraycopy(args, 2, jmhArgs, 0, jmhArgs.length);
+
+        json.getParentFile().mkdirs();
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs);
+        OptionsBuilder builder = new OptionsBuilder();
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(BenchmarkMain.class.getPackage().getName() + ".*Benchmark");
+        }
+        Options options = builder
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(json.getPath())
+                .build();
+        writeSummary(summary, new Runner(options).run());
+    }
+
+    private static void writeSummary(File aFile, Iterable<RunResult> aResults) throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (RunResult result : aResults) {
+            String benchmark = result.getParams().getBenchmark();
+            StringBuilder name = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.',
+                    benchmark.lastIndexOf('.') - 1) + 1));
+            for (String key : result.getParams().getParamsKeys()) {
+                name.append(' ').append(key).append('=').append(result.getParams().getParam(key));
+            }
+            Result primary = result.getPrimaryResult();
+            lines.add(String.format("%-50s %12.3f +- %9.3f %-6s %12.0f B/op", name, primary.getScore(),
+                    primary.getScoreError(), primary.getScoreUnit(), allocatedBytes(result)));
+        }
+        Collections.sort(lines);
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(aFile), "UTF-8");
+        try {
+            writer.write("# " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version") + ", " +
+                    System.getProperty("os.name") + " " + System.getProperty("os.arch") + ", " +
+                    Runtime.getRuntime().availableProcessors() + " cpus\n");
+            for (String line : lines) {
+                writer.write(line + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    // what the GC profiler calls gc.alloc.rate.norm, NaN if it did not run
+    private static double allocatedBytes(RunResult aResult) {
+        for (Map.Entry<String, Result> entry : aResult.getSecondaryResults().entrySet()) {
+            if (entry.getKey().endsWith("gc.alloc.rate.norm")) {
+                return entry.getValue().getScore();
+            }
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,49 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writing and reading result lists as they are saved with the instance state and in the disk cache.
+ * <p/>
+ * A {@code Parcel} needs a device, its round trip is measured by the {@code SpotifyMemoryBenchmark} instrumentation
+ * test. {@code ParcelableItems} writes the same fields, so the codec is a fair stand-in here.
+ */
+@State(Scope.Benchmark)
+public class CodecBenchmark extends SpotifyBenchmark {
+
+    @Param({"10", "50", "500"})
+    public int size;
+
+    private List<SpotifyItem.Track> tracks;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        SpotifyResultProcessor processor = new SpotifyResultProcessor();
+        tracks = processor.decodeTopTracks(new ByteArrayInputStream(Fixtures.topTracks(size)));
+        encoded = write();
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SpotifyItemCodec.writeItems(new DataOutputStream(bytes), tracks);
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public List<SpotifyItem.Track> read() throws IOException {
+        return SpotifyItemCodec.readItems(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+}
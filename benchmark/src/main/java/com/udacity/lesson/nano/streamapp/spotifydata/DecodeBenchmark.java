@@ -0,0 +1,78 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.ArtistsPager;
+import kaaes.spotify.webapi.android.models.Tracks;
+
+/**
+ * Response body to ranked {@code SpotifyItem}s: the streaming {@code SpotifyJsonDecoder} against the Gson object graph
+ * Retrofit builds, mapped by {@code SpotifyResultProcessor}.
+ */
+@State(Scope.Benchmark)
+public class DecodeBenchmark extends SpotifyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ArtistsResponse {
+        // a page as we request it, the largest page Spotify sends, and a lot more
+        @Param({"20", "50", "500"})
+        public int size;
+
+        byte[] body;
+
+        @Setup
+        public void setUp() throws IOException {
+            body = Fixtures.searchArtists(size);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class TracksResponse {
+        // top tracks are at most 10, more only show how it scales
+        @Param({"10", "100"})
+        public int size;
+
+        byte[] body;
+
+        @Setup
+        public void setUp() throws IOException {
+            body = Fixtures.topTracks(size);
+        }
+    }
+
+    private final SpotifyResultProcessor processor = new SpotifyResultProcessor();
+    private final Gson gson = new Gson();
+
+    @Benchmark
+    public List<SpotifyItem.Artist> artistsStreaming(ArtistsResponse aResponse) throws IOException {
+        return processor.rankArtists(processor.decodeArtists(new ByteArrayInputStream(aResponse.body)));
+    }
+
+    @Benchmark
+    public List<SpotifyItem.Artist> artistsGson(ArtistsResponse aResponse) throws IOException {
+        return processor.toArtists(gson.fromJson(
+                new InputStreamReader(new ByteArrayInputStream(aResponse.body), "UTF-8"), ArtistsPager.class));
+    }
+
+    @Benchmark
+    public List<SpotifyItem.Track> topTracksStreaming(TracksResponse aResponse) throws IOException {
+        return processor.rankTopTracks(processor.decodeTopTracks(new ByteArrayInputStream(aResponse.body)));
+    }
+
+    @Benchmark
+    public List<SpotifyItem.Track> topTracksGson(TracksResponse aResponse) throws IOException {
+        return processor.toTopTracks(gson.fromJson(
+                new InputStreamReader(new ByteArrayInputStream(aResponse.body), "UTF-8"), Tracks.class));
+    }
+}
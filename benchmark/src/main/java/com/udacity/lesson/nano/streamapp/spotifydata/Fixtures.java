@@ -0,0 +1,76 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * The recorded Spotify responses the instrumentation tests use as well (see {@code app/src/androidTest/assets}),
+ * grown to any number of items.
+ * <p/>
+ * Larger responses repeat the recorded items with a distinct id each, everything else is left as recorded. So the
+ * tracks of a larger response still share their albums, just like the top tracks of a real artist do.
+ */
+class Fixtures {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * @return a {@code /v1/search?type=artist} response body with {@code aSize} artists
+     */
+    static byte[] searchArtists(int aSize) throws IOException {
+        JsonObject response = load("fixtures/search-artists-50.json");
+        JsonObject page = response.getAsJsonObject("artists");
+        page.add("items", grow(page.getAsJsonArray("items"), aSize));
+        page.addProperty("limit", aSize);
+        return response.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * @return a {@code /v1/artists/{id}/top-tracks} response body with {@code aSize} tracks
+     */
+    static byte[] topTracks(int aSize) throws IOException {
+        JsonObject response = load("fixtures/top-tracks-10.json");
+        response.add("tracks", grow(response.getAsJsonArray("tracks"), aSize));
+        return response.toString().getBytes(UTF_8);
+    }
+
+    private static JsonArray grow(JsonArray aItems, int aSize) {
+        JsonArray items = new JsonArray();
+        for (int i = 0; i < aSize; i++) {
+            JsonObject item = copy(aItems.get(i % aItems.size()).getAsJsonObject());
+            if (i >= aItems.size()) {
+                item.addProperty("id", item.get("id").getAsString() + "-" + i / aItems.size());
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    // gson 2.3 has no deepCopy() yet
+    private static JsonObject copy(JsonObject aObject) {
+        return new JsonParser().parse(aObject.toString()).getAsJsonObject();
+    }
+
+    private static JsonObject load(String aName) throws IOException {
+        InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(aName);
+        if (in == null) {
+            throw new IOException(aName + " is not on the classpath");
+        }
+        try {
+            JsonElement json = new JsonParser().parse(new InputStreamReader(in, UTF_8));
+            return json.getAsJsonObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    private Fixtures() {
+    } // cannot instantiate - static method helper class
+}
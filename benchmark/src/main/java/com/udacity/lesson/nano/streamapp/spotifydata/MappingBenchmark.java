@@ -0,0 +1,65 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.ArtistsPager;
+import kaaes.spotify.webapi.android.models.Image;
+
+/**
+ * The steps after decoding on their own: mapping the Gson object graph, resolving the image variants, and ranking (sort and
+ * truncate) already decoded items.
+ */
+@State(Scope.Benchmark)
+public class MappingBenchmark extends SpotifyBenchmark {
+
+    @Param({"20", "50", "500"})
+    public int size;
+
+    private final SpotifyResultProcessor processor = new SpotifyResultProcessor();
+
+    private ArtistsPager pager;
+    private List<Image> images;
+    private List<SpotifyItem.Artist> artists;
+    private List<SpotifyItem.Track> tracks;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] body = Fixtures.searchArtists(size);
+        pager = new Gson().fromJson(new InputStreamReader(new ByteArrayInputStream(body), "UTF-8"),
+                ArtistsPager.class);
+        images = pager.artists.items.get(0).images;
+        artists = processor.decodeArtists(new ByteArrayInputStream(body));
+        tracks = processor.decodeTopTracks(new ByteArrayInputStream(Fixtures.topTracks(size)));
+    }
+
+    @Benchmark
+    public List<SpotifyItem.Artist> mapArtists() {
+        return processor.toArtists(pager);
+    }
+
+    @Benchmark
+    public AlbumImages.Variants resolveImages() {
+        return AlbumImages.resolve(null, images); // without indexing, so it is resolved every time
+    }
+
+    @Benchmark
+    public List<SpotifyItem.Artist> rankArtists() {
+        return processor.rankArtists(artists);
+    }
+
+    @Benchmark
+    public List<SpotifyItem.Track> rankTopTracks() {
+        return processor.rankTopTracks(tracks);
+    }
+}
@@ -0,0 +1,165 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import kaaes.spotify.webapi.android.models.Image;
+
+/**
+ * Index of the album art variants, shared by all tracks of an album.
+ * <p/>
+ * Spotify lists every image of an album with every single track. The list is resolved into the size buckets we use
+ * once per album, later tracks of the same album (in this or any later response) just look the result up. Screens can
+ * ask for the best URL for the size they are about to display, without going through the image list again.
+ * <p/>
+ * Artists come with the same image sizes, so their images are kept here as well, in an index of their own.
+ */
+public class AlbumImages {
+
+    /**
+     * The size buckets, smallest first
+     */
+    public enum Size {
+        THUMBNAIL,   // the smallest image there is
+        LIST,        // next to a track in a list, preferably 200px
+        FULL_SCREEN  // the player, the largest image there is
+    }
+
+    /**
+     * The resolved images of an album, immutable
+     */
+    public static class Variants {
+        private final String[] mBuckets = new String[Size.values().length];
+        // every image, narrowest first. Spotify sends three sizes, so looking one up is as good as constant
+        private final String[] mUrls;
+        private final int[] mWidths;
+
+        Variants(List<Image> aImages) {
+            set(Size.THUMBNAIL, SpotifyResultProcessor.findSmallestImage(aImages));
+            set(Size.LIST, SpotifyResultProcessor.findListImage(aImages));
+            set(Size.FULL_SCREEN, SpotifyResultProcessor.findFullScreenImage(aImages));
+
+            List<Image> images = new ArrayList<>(aImages);
+            Collections.sort(images, new Comparator<Image>() {
+                @Override
+                public int compare(Image lhs, Image rhs) {
+                    return lhs.width - rhs.width;
+                }
+            });
+            mUrls = new String[images.size()];
+            mWidths = new int[images.size()];
+            for (int i = 0; i < images.size(); i++) {
+                mUrls[i] = StringPool.intern(images.get(i).url);
+                mWidths[i] = images.get(i).width;
+            }
+        }
+
+        private void set(Size aSize, Image aImage) {
+            if (aImage != null) {
+                mBuckets[aSize.ordinal()] = StringPool.intern(aImage.url);
+            }
+        }
+
+        public String urlFor(Size aSize) {
+            return mBuckets[aSize.ordinal()];
+        }
+
+        /**
+         * @return the URL of the narrowest image at least {@code aTargetPx} wide, otherwise the widest one. Null if
+         * the album has no images.
+         */
+        public String urlFor(int aTargetPx) {
+            for (int i = 0; i < mWidths.length; i++) {
+                if (mWidths[i] >= aTargetPx) {
+                    return mUrls[i];
+                }
+            }
+            return mUrls.length > 0 ? mUrls[mUrls.length - 1] : null;
+        }
+    }
+
+    // the albums of a few dozen artists, older ones are simply resolved again
+    private static final int MAX_ALBUMS = 256;
+    // a few pages of search results
+    private static final int MAX_ARTISTS = 256;
+
+    private static final Map<String, Variants> sAlbums = createIndex(MAX_ALBUMS);
+    private static final Map<String, Variants> sArtists = createIndex(MAX_ARTISTS);
+
+    private static Map<String, Variants> createIndex(final int aMaxEntries) {
+        return new LinkedHashMap<String, Variants>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Variants> aEldest) {
+                return size() > aMaxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param aAlbumId the album, or null if unknown. Then the images are resolved without indexing them
+     * @param aImages  the images of the album, only looked at if it is not indexed yet
+     */
+    static Variants resolve(String aAlbumId, List<Image> aImages) {
+        return resolve(sAlbums, aAlbumId, aImages);
+    }
+
+    /**
+     * @return the variants of the album, or null if it is not indexed (anymore), e.g. after the process was
+     * restarted. Then fall back on the image URLs of the track.
+     */
+    public static Variants get(String aAlbumId) {
+        return get(sAlbums, aAlbumId);
+    }
+
+    /**
+     * Like {@link #resolve(String, List)}, for the images of an artist. These may have changed since they were
+     * resolved the last time, so they are always resolved again.
+     */
+    static Variants resolveArtist(String aArtistId, List<Image> aImages) {
+        Variants variants = new Variants(aImages);
+        if (aArtistId != null) {
+            synchronized (sArtists) {
+                sArtists.put(aArtistId, variants);
+            }
+        }
+        return variants;
+    }
+
+    /**
+     * @return the variants of the artist images, or null if it is not indexed (anymore). Then fall back on the
+     * image URL of the artist.
+     */
+    public static Variants getArtist(String aArtistId) {
+        return get(sArtists, aArtistId);
+    }
+
+    private static Variants resolve(Map<String, Variants> aIndex, String aKey, List<Image> aImages) {
+        if (aKey == null) {
+            return new Variants(aImages);
+        }
+        synchronized (aIndex) {
+            Variants variants = aIndex.get(aKey);
+            if (variants == null) {
+                variants = new Variants(aImages);
+                aIndex.put(aKey, variants);
+            }
+            return variants;
+        }
+    }
+
+    private static Variants get(Map<String, Variants> aIndex, String aKey) {
+        if (aKey == null) {
+            return null;
+        }
+        synchronized (aIndex) {
+            return aIndex.get(aKey);
+        }
+    }
+
+    private AlbumImages() {
+    } // cannot instantiate - static method helper class
+}
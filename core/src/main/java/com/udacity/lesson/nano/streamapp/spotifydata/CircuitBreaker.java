@@ -0,0 +1,60 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+/**
+ * Stops sending requests for a while, once the Spotify Web API is clearly down.
+ * <p/>
+ * After {@code aFailureThreshold} transient failures in a row the breaker opens, and every request fails right away
+ * without touching the network - rather than every user action waiting for timeouts and retries. Once
+ * {@code aOpenMs} have passed, a single trial request is let through: if it succeeds the breaker closes again,
+ * otherwise it stays open for another period.
+ */
+class CircuitBreaker {
+
+    private enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final int mFailureThreshold;
+    private final long mOpenNs;
+
+    private State mState = State.CLOSED;
+    private int mFailures;
+    private long mOpenedAtNs;
+
+    CircuitBreaker(int aFailureThreshold, long aOpenMs) {
+        mFailureThreshold = aFailureThreshold;
+        mOpenNs = aOpenMs * 1000000L;
+    }
+
+    /**
+     * @return true, if the request may be sent
+     */
+    synchronized boolean allowRequest() {
+        switch (mState) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - mOpenedAtNs < mOpenNs) {
+                    return false;
+                }
+                mState = State.HALF_OPEN; // let this one through as the trial
+                return true;
+            default:
+                return false; // the trial request is still in flight
+        }
+    }
+
+    synchronized void onSuccess() {
+        mState = State.CLOSED;
+        mFailures = 0;
+    }
+
+    /**
+     * To be called for transient failures only, a 404 says nothing about the health of the API
+     */
+    synchronized void onFailure() {
+        mFailures++;
+        if (mState == State.HALF_OPEN || mFailures >= mFailureThreshold) {
+            mState = State.OPEN;
+            mOpenedAtNs = System.nanoTime();
+        }
+    }
+}
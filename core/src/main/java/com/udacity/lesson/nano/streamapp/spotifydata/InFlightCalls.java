@@ -0,0 +1,182 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Table of the Spotify requests currently in flight, keyed by their request identity (the cache key).
+ * <p/>
+ * The first caller for a key issues the request, every later caller for the same key just attaches to it and
+ * receives the very same result once the request completes. E.g. pressing search twice or rotating the device
+ * while the top tracks are loading costs only a single network call.
+ */
+class InFlightCalls {
+
+    /**
+     * A request, that is actually issued, together with every caller waiting for it
+     */
+    static class Call {
+        final String key;
+        private final List<SpotifyRequest<?>> requests = new ArrayList<>(2);
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private volatile boolean background;
+        private boolean interactive; // an interactive caller is waiting, guarded by the InFlightCalls
+        volatile Runnable fetchTask; // set once the call is queued for the network
+        volatile long queuedAtNs;    // when it was queued for the network, for the metrics
+
+        Call(String aKey, boolean aBackground) {
+            key = aKey;
+            background = aBackground;
+        }
+
+        /**
+         * @return true, if every caller has lost interest - there is no point in sending it anymore
+         */
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return true, if only background callers (e.g. a prefetch) are waiting for the result
+         */
+        boolean isBackground() {
+            return background;
+        }
+
+        /**
+         * A call may be queued more than once, e.g. after it got promoted. Only the first one to start sends it
+         *
+         * @return true, if the caller may send the request
+         */
+        boolean tryStart() {
+            return started.compareAndSet(false, true);
+        }
+    }
+
+    private final Map<String, Call> mPending = new HashMap<>();
+
+    private final AtomicLong mIssued = new AtomicLong();
+    private final AtomicLong mSaved = new AtomicLong();
+    private final AtomicLong mCancelled = new AtomicLong();
+
+    /**
+     * @return the new call, if no request is in flight for the key yet and the caller has to issue it, or null if
+     * the request was attached to the pending call
+     */
+    synchronized Call attach(SpotifyRequest<?> aRequest, boolean aBackground) {
+        Call call = mPending.get(aRequest.key);
+        if (call != null) {
+            call.requests.add(aRequest);
+            call.interactive |= !aBackground;
+            mSaved.incrementAndGet();
+            return null;
+        }
+        call = new Call(aRequest.key, aBackground);
+        call.interactive = !aBackground;
+        call.requests.add(aRequest);
+        mPending.put(aRequest.key, call);
+        mIssued.incrementAndGet();
+        return call;
+    }
+
+    /**
+     * An interactive caller has attached to a call, that was issued in the background and has not been sent yet.
+     *
+     * @return the call, that must be queued again with interactive priority, or null if there is nothing to promote
+     */
+    synchronized Call promote(String aKey) {
+        Call call = mPending.get(aKey);
+        if (call == null || !call.background || call.started.get()) {
+            return null;
+        }
+        call.background = false;
+        return call;
+    }
+
+    /**
+     * Gives up a call before it is sent, e.g. because a prefetch is over its budget. Later callers for the key issue a
+     * new call instead of attaching to this one.
+     *
+     * @return true, if it was given up and its requests are to be completed. False, if an interactive caller is
+     * waiting for it by now, so it has to be sent after all, or if it is no longer pending
+     */
+    synchronized boolean drop(Call aCall) {
+        if (aCall.interactive || mPending.get(aCall.key) != aCall) {
+            return false;
+        }
+        mPending.remove(aCall.key);
+        return true;
+    }
+
+    /**
+     * Removes a cancelled request from its call. If it was the last one, the call itself is cancelled
+     */
+    synchronized void detach(SpotifyRequest<?> aRequest) {
+        Call call = mPending.get(aRequest.key);
+        if (call != null && call.requests.remove(aRequest) && call.requests.isEmpty()) {
+            mPending.remove(aRequest.key);
+            call.cancelled = true;
+            mCancelled.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the call from the table
+     *
+     * @return all requests, that were waiting for the result of the call
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T extends SpotifyItem> List<SpotifyRequest<T>> complete(Call aCall) {
+        if (mPending.get(aCall.key) == aCall) {
+            mPending.remove(aCall.key);
+        }
+        if (aCall.requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<SpotifyRequest<T>> requests = new ArrayList<>(aCall.requests.size());
+        for (SpotifyRequest<?> request : aCall.requests) {
+            requests.add((SpotifyRequest<T>) request);
+        }
+        aCall.requests.clear();
+        return requests;
+    }
+
+    /**
+     * @return all requests, that are currently waiting for the result of the call
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T extends SpotifyItem> List<SpotifyRequest<T>> requestsOf(Call aCall) {
+        List<SpotifyRequest<T>> requests = new ArrayList<>(aCall.requests.size());
+        for (SpotifyRequest<?> request : aCall.requests) {
+            requests.add((SpotifyRequest<T>) request);
+        }
+        return requests;
+    }
+
+    /**
+     * @return number of requests, that actually had to be issued
+     */
+    long getIssuedCount() {
+        return mIssued.get();
+    }
+
+    /**
+     * @return number of requests, that were saved by attaching to an already pending one
+     */
+    long getSavedCount() {
+        return mSaved.get();
+    }
+
+    /**
+     * @return number of issued requests, that were cancelled by all of their callers
+     */
+    long getCancelledCount() {
+        return mCancelled.get();
+    }
+}
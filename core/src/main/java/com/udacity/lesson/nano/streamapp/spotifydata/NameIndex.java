@@ -0,0 +1,196 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable prefix index over the words of item names, e.g. "the", "beatles" for "The Beatles".
+ * <p/>
+ * The words are kept in one shared char array and looked up by binary search over their sorted order, so there is no
+ * String (nor trie node) per word: a word costs its characters plus three ints. Adding names returns a new index,
+ * which shares the arrays of the old one wherever it can - the old one never looks past its own count, so it remains
+ * valid for anybody still reading it. So only ever add to the latest index.
+ */
+class NameIndex {
+
+    // no room at all, so the first with() allocates arrays of its own - EMPTY is the start of every index, writing
+    // into shared arrays would mix up the words of all of them
+    static final NameIndex EMPTY = new NameIndex(new char[0], 0, new int[1], new int[0], 0, new int[0]);
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final char[] mChars;   // the characters of all words, in the order they were added
+    private final int mCharCount;
+    private final int[] mStarts;   // word -> its first char, mStarts[word + 1] is the end
+    private final int[] mOwners;   // word -> the item it belongs to
+    private final int mWordCount;
+    private final int[] mSorted;   // words in lexicographic order
+
+    private NameIndex(char[] aChars, int aCharCount, int[] aStarts, int[] aOwners, int aWordCount, int[] aSorted) {
+        mChars = aChars;
+        mCharCount = aCharCount;
+        mStarts = aStarts;
+        mOwners = aOwners;
+        mWordCount = aWordCount;
+        mSorted = aSorted;
+    }
+
+    /**
+     * Splits a name or query into lower case words without accents, so names are found without typing the accents
+     */
+    static List<String> words(String aText) {
+        List<String> words = new ArrayList<>(4);
+        if (aText == null) {
+            return words;
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(aText, Normalizer.Form.NFD)).replaceAll("");
+        for (String word : SEPARATORS.split(folded.toLowerCase(Locale.getDefault()))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    int size() {
+        return mWordCount;
+    }
+
+    /**
+     * @param aOwners the item of each name
+     * @return a new index holding the words of {@code aNames} in addition to ours
+     */
+    NameIndex with(int[] aOwners, List<String> aNames) {
+        char[] chars = mChars;
+        int charCount = mCharCount;
+        int[] starts = mStarts;
+        int[] owners = mOwners;
+        int wordCount = mWordCount;
+
+        for (int i = 0; i < aNames.size(); i++) {
+            for (String word : words(aNames.get(i))) {
+                if (charCount + word.length() > chars.length) {
+                    chars = grow(chars, charCount + word.length());
+                }
+                if (wordCount + 2 > starts.length) {
+                    starts = grow(starts, wordCount + 2);
+                }
+                if (wordCount + 1 > owners.length) {
+                    owners = grow(owners, wordCount + 1);
+                }
+                word.getChars(0, word.length(), chars, charCount);
+                starts[wordCount] = charCount;
+                owners[wordCount] = aOwners[i];
+                charCount += word.length();
+                wordCount++;
+                starts[wordCount] = charCount;
+            }
+        }
+        if (wordCount == mWordCount) {
+            return this;
+        }
+        // sort the new words on their own, then merge them with the sorted old ones
+        Integer[] added = new Integer[wordCount - mWordCount];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = mWordCount + i;
+        }
+        final char[] c = chars;
+        final int[] s = starts;
+        Arrays.sort(added, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return compareWords(c, s, a, b);
+            }
+        });
+        int[] sorted = new int[wordCount];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < mSorted.length && j < added.length) {
+            sorted[k++] = compareWords(c, s, mSorted[i], added[j]) <= 0 ? mSorted[i++] : added[j++];
+        }
+        while (i < mSorted.length) {
+            sorted[k++] = mSorted[i++];
+        }
+        while (j < added.length) {
+            sorted[k++] = added[j++];
+        }
+        return new NameIndex(chars, charCount, starts, owners, wordCount, sorted);
+    }
+
+    /**
+     * Marks the items with a word starting with {@code aPrefix}
+     *
+     * @param aPrefix a single word, as returned by {@link #words(String)}
+     * @param aMax    stop after that many words, a single letter may well match thousands
+     * @return the number of matching words seen
+     */
+    int collect(String aPrefix, BitSet aOwners, int aMax) {
+        // the first word not less than the prefix
+        int low = 0;
+        int high = mSorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(mSorted[mid], aPrefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int seen = 0;
+        for (int i = low; i < mSorted.length && seen < aMax && startsWith(mSorted[i], aPrefix); i++, seen++) {
+            aOwners.set(mOwners[mSorted[i]]);
+        }
+        return seen;
+    }
+
+    private static int compareWords(char[] aChars, int[] aStarts, int a, int b) {
+        int i = aStarts[a];
+        int endA = aStarts[a + 1];
+        int j = aStarts[b];
+        int endB = aStarts[b + 1];
+        while (i < endA && j < endB) {
+            int diff = aChars[i++] - aChars[j++];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (endA - aStarts[a]) - (endB - aStarts[b]);
+    }
+
+    // compares only the first prefix.length() chars of the word, so every word starting with the prefix is "equal"
+    private int comparePrefix(int aWord, String aPrefix) {
+        int start = mStarts[aWord];
+        int length = Math.min(mStarts[aWord + 1] - start, aPrefix.length());
+        for (int i = 0; i < length; i++) {
+            int diff = mChars[start + i] - aPrefix.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length < aPrefix.length() ? -1 : 0;
+    }
+
+    private boolean startsWith(int aWord, String aPrefix) {
+        return comparePrefix(aWord, aPrefix) == 0;
+    }
+
+    private static char[] grow(char[] aArray, int aMinLength) {
+        char[] grown = new char[Math.max(Math.max(aMinLength, 64), aArray.length * 2)];
+        System.arraycopy(aArray, 0, grown, 0, aArray.length);
+        return grown;
+    }
+
+    private static int[] grow(int[] aArray, int aMinLength) {
+        int[] grown = new int[Math.max(Math.max(aMinLength, 16), aArray.length * 2)];
+        System.arraycopy(aArray, 0, grown, 0, aArray.length);
+        return grown;
+    }
+}
@@ -0,0 +1,50 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether and when a failed request is sent once more.
+ * <p/>
+ * Only transient failures are retried (see {@code SpotifyError.isTransient()}), a limited number of times, with an
+ * exponentially growing delay. The delay is picked at random below that limit ("full jitter"), so the clients that
+ * failed at the same moment do not all come back at the same moment again.
+ */
+class RetryPolicy {
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMs;
+    private final long mMaxDelayMs;
+    private final Random mRandom = new Random();
+
+    /**
+     * @param aMaxAttempts total number of attempts, including the first one
+     * @param aBaseDelayMs upper limit of the delay before the first retry, it doubles with every further one
+     * @param aMaxDelayMs  upper limit of any delay
+     */
+    RetryPolicy(int aMaxAttempts, long aBaseDelayMs, long aMaxDelayMs) {
+        mMaxAttempts = aMaxAttempts;
+        mBaseDelayMs = aBaseDelayMs;
+        mMaxDelayMs = aMaxDelayMs;
+    }
+
+    /**
+     * @param aAttempt the attempt, that just failed, starting with 1
+     * @return the delay in milliseconds before the next attempt, or -1 if the request must not be retried
+     */
+    long nextDelayMs(int aAttempt, SpotifyError aError) {
+        if (aAttempt >= mMaxAttempts || !aError.isTransient()) {
+            return -1;
+        }
+        if (aError.retryAfterSeconds >= 0) {
+            long retryAfterMs = TimeUnit.SECONDS.toMillis(aError.retryAfterSeconds);
+            // the server told us, but if it asks for longer than we are willing to wait, the user is better off
+            // with an error right away
+            return retryAfterMs <= mMaxDelayMs ? retryAfterMs : -1;
+        }
+        long limit = Math.min(mMaxDelayMs, mBaseDelayMs << Math.min(aAttempt - 1, 20));
+        synchronized (mRandom) {
+            return (long) (mRandom.nextDouble() * limit);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.util.List;
+
+/**
+ * Callback interface use to update our View once responses from the Spotify Service have been received
+ *
+ * @param <T> Type of received items
+ */
+public interface SpotifyCallback<T extends SpotifyItem> {
+
+    /**
+     * Called when a response for a spotify {@code SpotifyService.searchArtists()} or {@code SpotifyService.getArtistTopTrack()}
+     * request was received and fully evaluated
+     *
+     * @param aItems containing the results or an empty list if no artist/track was found
+     * @param aStale true, if the results are cached ones, that have outlived their time-to-live. They are refreshed in
+     *               the background, and {@code onUpdate()} is called once more with the fresh results. If the refresh
+     *               fails, the stale results stand and nothing else is reported
+     */
+    void onUpdate(List<T> aItems, boolean aStale);
+
+    /**
+     * Called instead of {@code onUpdate()}, if the request failed (even after retrying) and nothing was cached
+     */
+    void onError(SpotifyError aError);
+}
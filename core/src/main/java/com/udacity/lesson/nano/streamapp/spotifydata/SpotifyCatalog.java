@@ -0,0 +1,376 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Every artist and track the app has seen so far, searchable by the words of their names without any connectivity.
+ * <p/>
+ * Searching is lock-free and takes well below a millisecond even with tens of thousands of items, so it can be done
+ * on the main thread for every keystroke. Adding items copies on write and should be done in the background.
+ * <p/>
+ * The items are persisted in a single file. New and changed items are appended to it as they come in, so nothing is
+ * written twice, and the file is compacted on {@link #load()} once it has grown well beyond its content.
+ */
+public class SpotifyCatalog {
+
+    private static final Logger LOG = Logger.getLogger(SpotifyCatalog.class.getSimpleName());
+
+    // a few MB on disk and in memory. once full, new items are not added anymore
+    private static final int MAX_ARTISTS = 20000;
+    private static final int MAX_TRACKS = 20000;
+
+    // a single letter matches a lot of words, we look at that many at most
+    private static final int MAX_MATCHING_WORDS = 2000;
+
+    // the items of a shelf, replaced as a whole whenever something is added
+    private static class Snapshot {
+        final Object[] items;
+        final int count;
+        final NameIndex index;
+
+        Snapshot(Object[] aItems, int aCount, NameIndex aIndex) {
+            items = aItems;
+            count = aCount;
+            index = aIndex;
+        }
+    }
+
+    // the items of one kind
+    private abstract static class Shelf<T extends SpotifyItem> {
+        final int maxItems;
+        final Map<String, Integer> positions = new HashMap<>(); // guarded by the catalog
+        volatile Snapshot snapshot = new Snapshot(new Object[16], 0, NameIndex.EMPTY);
+
+        Shelf(int aMaxItems) {
+            maxItems = aMaxItems;
+        }
+
+        // identifies the item across responses, null if it cannot be
+        abstract String keyOf(T aItem);
+
+        /**
+         * Only to be called by the catalog, holding its lock
+         *
+         * @param aReplace false, if items already present are kept as they are
+         * @return the items, that are either new or have changed
+         */
+        List<T> add(List<T> aItems, boolean aReplace) {
+            Snapshot current = snapshot;
+            Object[] items = current.items;
+            int count = current.count;
+            int[] owners = new int[aItems.size()];
+            List<String> names = new ArrayList<>(aItems.size());
+            List<T> changed = new ArrayList<>(aItems.size());
+
+            for (T item : aItems) {
+                String key = keyOf(item);
+                if (key == null) {
+                    continue;
+                }
+                Integer position = positions.get(key);
+                if (position != null) {
+                    @SuppressWarnings("unchecked")
+                    T old = (T) items[position];
+                    if (!aReplace || sameContent(old, item)) {
+                        continue;
+                    }
+                    // safe to write into the shared array, a reader sees either version of the same item
+                    items[position] = item;
+                    changed.add(item);
+                    if (!equal(old.name, item.name)) {
+                        owners[names.size()] = position; // the old words stay, see search()
+                        names.add(item.name);
+                    }
+                } else if (count < maxItems) {
+                    if (count == items.length) {
+                        Object[] grown = new Object[Math.min(maxItems, items.length * 2)];
+                        System.arraycopy(items, 0, grown, 0, count);
+                        items = grown;
+                    }
+                    items[count] = item;
+                    positions.put(key, count);
+                    owners[names.size()] = count;
+                    names.add(item.name);
+                    changed.add(item);
+                    count++;
+                }
+            }
+            if (!changed.isEmpty()) {
+                snapshot = new Snapshot(items, count, current.index.with(owners, names));
+            }
+            return changed;
+        }
+
+        List<T> search(String aQuery, int aLimit) {
+            List<String> words = NameIndex.words(aQuery);
+            if (words.isEmpty()) {
+                return Collections.emptyList();
+            }
+            // the longest word is the most selective one, the others are checked on the candidates
+            String longest = words.get(0);
+            for (String word : words) {
+                if (word.length() > longest.length()) {
+                    longest = word;
+                }
+            }
+            Snapshot current = snapshot;
+            BitSet candidates = new BitSet(current.count);
+            current.index.collect(longest, candidates, MAX_MATCHING_WORDS);
+
+            List<T> matches = new ArrayList<>();
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                @SuppressWarnings("unchecked")
+                T item = (T) current.items[i];
+                // a single word needs no check. if an item was renamed, its old words may still find it,
+                // which happens too rarely to be worth rebuilding the index
+                if (words.size() == 1 || matchesAll(NameIndex.words(item.name), words)) {
+                    matches.add(item);
+                }
+            }
+            return SpotifyRanking.top(matches, aLimit);
+        }
+
+        List<T> all() {
+            Snapshot current = snapshot;
+            List<T> all = new ArrayList<>(current.count);
+            for (int i = 0; i < current.count; i++) {
+                @SuppressWarnings("unchecked")
+                T item = (T) current.items[i];
+                all.add(item);
+            }
+            return all;
+        }
+
+        int size() {
+            return snapshot.count;
+        }
+
+        // only to be called by the catalog, holding its lock
+        void clear() {
+            positions.clear();
+            snapshot = new Snapshot(new Object[16], 0, NameIndex.EMPTY);
+        }
+    }
+
+    private final Shelf<SpotifyItem.Artist> mArtists = new Shelf<SpotifyItem.Artist>(MAX_ARTISTS) {
+        @Override
+        String keyOf(SpotifyItem.Artist aArtist) {
+            return aArtist.id;
+        }
+    };
+
+    private final Shelf<SpotifyItem.Track> mTracks = new Shelf<SpotifyItem.Track>(MAX_TRACKS) {
+        @Override
+        String keyOf(SpotifyItem.Track aTrack) {
+            // tracks have no id of their own here
+            return aTrack.trackUrl != null ? aTrack.trackUrl : aTrack.name + '\n' + aTrack.albumName;
+        }
+    };
+
+    private final File mFile;
+
+    /**
+     * @param aFile where the items are persisted, null to keep them in memory only
+     */
+    public SpotifyCatalog(File aFile) {
+        mFile = aFile;
+    }
+
+    /**
+     * Reads the persisted items, blocks on I/O. Items added before are not replaced by older ones from the file.
+     */
+    public synchronized void load() {
+        if (mFile == null || !mFile.exists()) {
+            return;
+        }
+        long startNs = System.nanoTime();
+        Map<String, SpotifyItem.Artist> artists = new LinkedHashMap<>();
+        Map<String, SpotifyItem.Track> tracks = new LinkedHashMap<>();
+        int records = 0;
+        boolean corrupt = false;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            while (true) {
+                in.mark(1);
+                if (in.read() == -1) {
+                    break;
+                }
+                in.reset();
+                // later records hold the newer versions
+                for (SpotifyItem item : SpotifyItemCodec.<SpotifyItem>readItems(in)) {
+                    records++;
+                    if (item instanceof SpotifyItem.Artist) {
+                        SpotifyItem.Artist artist = (SpotifyItem.Artist) item;
+                        artists.put(mArtists.keyOf(artist), artist);
+                    } else {
+                        SpotifyItem.Track track = (SpotifyItem.Track) item;
+                        tracks.put(mTracks.keyOf(track), track);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // e.g. the process died while appending, everything up to there is fine
+            LOG.log(Level.WARNING, "reading " + mFile + " stopped after " + records + " items", e);
+            corrupt = true;
+        } finally {
+            close(in);
+        }
+        mArtists.add(new ArrayList<>(artists.values()), false);
+        mTracks.add(new ArrayList<>(tracks.values()), false);
+        LOG.fine("loaded " + mArtists.size() + " artists and " + mTracks.size() + " tracks in " +
+                (System.nanoTime() - startNs) / 1000000 + " ms");
+
+        if (corrupt || records > 2 * (mArtists.size() + mTracks.size())) {
+            compact();
+        }
+    }
+
+    /**
+     * Adds new artists or tracks, and updates those already known. Blocks on I/O.
+     */
+    public synchronized void add(List<? extends SpotifyItem> aItems) {
+        List<SpotifyItem.Artist> artists = new ArrayList<>();
+        List<SpotifyItem.Track> tracks = new ArrayList<>();
+        for (SpotifyItem item : aItems) {
+            if (item instanceof SpotifyItem.Artist) {
+                artists.add((SpotifyItem.Artist) item);
+            } else if (item instanceof SpotifyItem.Track) {
+                tracks.add((SpotifyItem.Track) item);
+            }
+        }
+        List<SpotifyItem> changed = new ArrayList<>();
+        changed.addAll(mArtists.add(artists, true));
+        changed.addAll(mTracks.add(tracks, true));
+        if (!changed.isEmpty() && mFile != null) {
+            append(changed);
+        }
+    }
+
+    /**
+     * @return the artists with a word in their name starting with each of the words of {@code aQuery}, in the order
+     * of {@code SpotifyRanking}
+     */
+    public List<SpotifyItem.Artist> searchArtists(String aQuery, int aLimit) {
+        return mArtists.search(aQuery, aLimit);
+    }
+
+    /**
+     * @return the tracks with a word in their name starting with each of the words of {@code aQuery}, in the order
+     * of {@code SpotifyRanking}
+     */
+    public List<SpotifyItem.Track> searchTracks(String aQuery, int aLimit) {
+        return mTracks.search(aQuery, aLimit);
+    }
+
+    /**
+     * Drops the items from memory, e.g. to give memory back to the system. Until they are {@link #load()}ed again,
+     * searches only find the items added since. Nothing is lost, the file keeps all of them.
+     */
+    public synchronized void unload() {
+        mArtists.clear();
+        mTracks.clear();
+    }
+
+    /**
+     * @return rough estimate of the heap retained by the items, without their index
+     */
+    public long estimateBytes() {
+        return SpotifyResponseCache.estimateBytes(mArtists.all()) + SpotifyResponseCache.estimateBytes(mTracks.all());
+    }
+
+    public int getArtistCount() {
+        return mArtists.size();
+    }
+
+    public int getTrackCount() {
+        return mTracks.size();
+    }
+
+    private void append(List<SpotifyItem> aItems) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, true)));
+            SpotifyItemCodec.writeItems(out, aItems);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "appending to " + mFile + " failed", e);
+        } finally {
+            close(out);
+        }
+    }
+
+    // rewrites the file with the current items only
+    private void compact() {
+        List<SpotifyItem> all = new ArrayList<>(mArtists.size() + mTracks.size());
+        all.addAll(mArtists.all());
+        all.addAll(mTracks.all());
+        File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            SpotifyItemCodec.writeItems(out, all);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mFile)) {
+                throw new IOException("cannot rename " + tmp);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "compacting " + mFile + " failed", e);
+            tmp.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    private static boolean sameContent(SpotifyItem aOld, SpotifyItem aNew) {
+        return aOld.popularity == aNew.popularity && equal(aOld.name, aNew.name) &&
+                equal(aOld.imageUrl, aNew.imageUrl);
+    }
+
+    private static boolean matchesAll(List<String> aNameWords, List<String> aQueryWords) {
+        for (String queryWord : aQueryWords) {
+            boolean found = false;
+            for (String nameWord : aNameWords) {
+                if (nameWord.startsWith(queryWord)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void close(Closeable aCloseable) {
+        if (aCloseable != null) {
+            try {
+                aCloseable.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import retrofit.RetrofitError;
+import retrofit.client.Header;
+
+/**
+ * Why a request to the Spotify Web API failed, passed to {@code SpotifyCallback.onError()}
+ */
+public class SpotifyError {
+
+    public enum Kind {
+        /**
+         * The server could not be reached, e.g. no connectivity or a timeout
+         */
+        NETWORK,
+        /**
+         * The server answered with an HTTP error status
+         */
+        HTTP,
+        /**
+         * The response could not be decoded
+         */
+        CONVERSION,
+        /**
+         * The request was not even sent, as the API has failed repeatedly just before (see {@code CircuitBreaker})
+         */
+        UNAVAILABLE,
+        /**
+         * Anything else, most likely a bug
+         */
+        UNEXPECTED
+    }
+
+    public final Kind kind;
+    public final int status; // the HTTP status, or 0 if there was no response
+    final int retryAfterSeconds; // as asked for by the server, or -1
+
+    SpotifyError(Kind aKind, int aStatus, int aRetryAfterSeconds) {
+        kind = aKind;
+        status = aStatus;
+        retryAfterSeconds = aRetryAfterSeconds;
+    }
+
+    static SpotifyError from(RetrofitError aError) {
+        if (aError.getResponse() == null) {
+            return new SpotifyError(kindOf(aError.getKind()), 0, -1);
+        }
+        int retryAfter = -1;
+        for (Header header : aError.getResponse().getHeaders()) {
+            if ("Retry-After".equalsIgnoreCase(header.getName())) {
+                try {
+                    retryAfter = Integer.parseInt(header.getValue().trim());
+                } catch (NumberFormatException e) {
+                    // an HTTP date, rare enough to just use our own backoff
+                }
+            }
+        }
+        return new SpotifyError(kindOf(aError.getKind()), aError.getResponse().getStatus(), retryAfter);
+    }
+
+    private static Kind kindOf(RetrofitError.Kind aKind) {
+        switch (aKind) {
+            case NETWORK:
+                return Kind.NETWORK;
+            case HTTP:
+                return Kind.HTTP;
+            case CONVERSION:
+                return Kind.CONVERSION;
+            default:
+                return Kind.UNEXPECTED;
+        }
+    }
+
+    /**
+     * @return true, if sending the same request once more may well succeed: connectivity problems, rate limiting
+     * (429) and server errors (5xx)
+     */
+    boolean isTransient() {
+        return kind == Kind.NETWORK || (kind == Kind.HTTP && (status == 429 || status >= 500));
+    }
+
+    @Override
+    public String toString() {
+        return kind + (status != 0 ? " (" + status + ")" : "");
+    }
+}
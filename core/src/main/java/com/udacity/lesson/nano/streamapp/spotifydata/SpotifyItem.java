@@ -0,0 +1,50 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+/**
+ * POJO holding Spotify data.
+ * <p/>
+ * The base class holds common data. To pass items around as Intent data, wrap them in {@code ParcelableItems}.
+ */
+public class SpotifyItem {
+
+    public final int popularity;
+    public final String imageUrl;
+    public final String name;
+
+    public SpotifyItem(String aName, String aImageUrl, int aPopularity) {
+        popularity = aPopularity;
+        name = aName;
+        imageUrl = aImageUrl;
+    }
+
+    // holds artist specific data
+    public static class Artist extends SpotifyItem {
+
+        public final String id;
+
+        public Artist(String aName, String aImageUrl, int aPopularity, String aId) {
+            super(aName, aImageUrl, aPopularity);
+            id = aId;
+        }
+    }
+
+    // holds track specific data
+    public static class Track extends SpotifyItem {
+
+        public final String albumName;
+        public final String trackUrl;
+        public final String largeImageUrl;
+        public final int durationMs;
+        public final String albumId; // to look up the art in AlbumImages, may be null
+
+        public Track(String aName, String aImageUrl, int aPopularity, String aAlbumName,
+                     String aTrackUrl, String aLargeImageUrl, int aDurationMs, String aAlbumId) {
+            super(aName, aImageUrl, aPopularity);
+            albumName = aAlbumName;
+            trackUrl = aTrackUrl;
+            largeImageUrl = aLargeImageUrl;
+            durationMs = aDurationMs;
+            albumId = aAlbumId;
+        }
+    }
+}
\ No newline at end of file
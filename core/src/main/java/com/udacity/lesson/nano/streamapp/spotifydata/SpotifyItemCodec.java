@@ -0,0 +1,109 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact binary encoding of {@code SpotifyItem} lists, e.g. for storing them on disk.
+ * <p/>
+ * Unlike a {@code Parcel}, the format is meant to be persisted, so it starts with a version number. Any change to the
+ * layout needs to bump {@link #VERSION}, older data is then rejected and simply has to be fetched again - unless
+ * reading it is as simple as for version 1, which only lacks the album id.
+ */
+public class SpotifyItemCodec {
+
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_ALBUM_ID = 1;
+
+    // more than the catalog ever writes at once, anything beyond is a corrupt size
+    private static final int MAX_ITEMS = 65536;
+
+    private static final byte TYPE_ARTIST = 1;
+    private static final byte TYPE_TRACK = 2;
+
+    public static void writeItems(DataOutput aOut, List<? extends SpotifyItem> aItems) throws IOException {
+        aOut.writeInt(VERSION);
+        aOut.writeInt(aItems.size());
+        for (SpotifyItem item : aItems) {
+            if (item instanceof SpotifyItem.Artist) {
+                SpotifyItem.Artist artist = (SpotifyItem.Artist) item;
+                aOut.writeByte(TYPE_ARTIST);
+                writeCommon(aOut, artist);
+                writeString(aOut, artist.id);
+            } else if (item instanceof SpotifyItem.Track) {
+                SpotifyItem.Track track = (SpotifyItem.Track) item;
+                aOut.writeByte(TYPE_TRACK);
+                writeCommon(aOut, track);
+                writeString(aOut, track.albumName);
+                writeString(aOut, track.trackUrl);
+                writeString(aOut, track.largeImageUrl);
+                aOut.writeInt(track.durationMs);
+                writeString(aOut, track.albumId);
+            } else {
+                throw new IllegalArgumentException("unsupported item: " + item.getClass());
+            }
+        }
+    }
+
+    /**
+     * @return the unmodifiable list of decoded items
+     * @throws IOException if the data is corrupt or was written with another version
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends SpotifyItem> List<T> readItems(DataInput aIn) throws IOException {
+        int version = aIn.readInt();
+        if (version != VERSION && version != VERSION_WITHOUT_ALBUM_ID) {
+            throw new IOException("unsupported version " + version);
+        }
+        int size = aIn.readInt();
+        if (size < 0 || size > MAX_ITEMS) {
+            throw new IOException("corrupt item count " + size);
+        }
+        List<SpotifyItem> items = new ArrayList<>(Math.min(size, 64)); // grows as far as the data actually goes
+        for (int i = 0; i < size; i++) {
+            byte type = aIn.readByte();
+            int popularity = aIn.readInt();
+            String imageUrl = StringPool.intern(readString(aIn));
+            String name = readString(aIn);
+            if (type == TYPE_ARTIST) {
+                items.add(new SpotifyItem.Artist(name, imageUrl, popularity, readString(aIn)));
+            } else if (type == TYPE_TRACK) {
+                String albumName = StringPool.intern(readString(aIn));
+                String trackUrl = readString(aIn);
+                String largeImageUrl = StringPool.intern(readString(aIn));
+                int durationMs = aIn.readInt();
+                String albumId = version == VERSION ? StringPool.intern(readString(aIn)) : null;
+                items.add(new SpotifyItem.Track(name, imageUrl, popularity, albumName, trackUrl, largeImageUrl,
+                        durationMs, albumId));
+            } else {
+                throw new IOException("unknown item type " + type);
+            }
+        }
+        return (List<T>) Collections.unmodifiableList(items);
+    }
+
+    private static void writeCommon(DataOutput aOut, SpotifyItem aItem) throws IOException {
+        aOut.writeInt(aItem.popularity);
+        writeString(aOut, aItem.imageUrl);
+        writeString(aOut, aItem.name);
+    }
+
+    // writeUTF() cannot handle null, so we prefix every string with a marker
+    private static void writeString(DataOutput aOut, String aValue) throws IOException {
+        aOut.writeBoolean(aValue != null);
+        if (aValue != null) {
+            aOut.writeUTF(aValue);
+        }
+    }
+
+    private static String readString(DataInput aIn) throws IOException {
+        return aIn.readBoolean() ? aIn.readUTF() : null;
+    }
+
+    private SpotifyItemCodec() {
+    } // cannot instantiate - static method helper class
+}
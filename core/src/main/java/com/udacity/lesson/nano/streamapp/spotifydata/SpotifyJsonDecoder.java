@@ -0,0 +1,218 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.Image;
+
+/**
+ * Streaming decoder for the Spotify responses we are interested in.
+ * <p/>
+ * Retrofit/Gson builds the complete {@code kaaes.spotify.webapi.android.models} object graph for every response,
+ * including followers, genres, external URLs and the long list of available markets of every track and album. We only
+ * ever look at a handful of fields, so this decoder pulls them straight out of the token stream into
+ * {@code SpotifyItem}s and skips every other subtree without materializing it.
+ */
+class SpotifyJsonDecoder {
+
+    // this could be a Settings Option, e.g. if you were able to log in
+    // using a real account - the previews are always 30 seconds
+    private static final int PREVIEW_DURATION_MS = 30000;
+
+    /**
+     * Decodes a {@code /v1/search?type=artist} response body
+     *
+     * @return the artists of the page, in the order of the response
+     */
+    static List<SpotifyItem.Artist> decodeArtists(InputStream aBody) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(aBody, "UTF-8"));
+        try {
+            List<SpotifyItem.Artist> artists = Collections.emptyList();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("artists".equals(reader.nextName())) {
+                    artists = readArtistPage(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return artists;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Decodes a {@code /v1/artists/{id}/top-tracks} response body
+     *
+     * @return the tracks, in the order of the response
+     */
+    static List<SpotifyItem.Track> decodeTopTracks(InputStream aBody) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(aBody, "UTF-8"));
+        try {
+            List<SpotifyItem.Track> tracks = Collections.emptyList();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("tracks".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    tracks = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        tracks.add(readTrack(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return tracks;
+        } finally {
+            reader.close();
+        }
+    }
+
+    // the paging object, we only need its items
+    private static List<SpotifyItem.Artist> readArtistPage(JsonReader aReader) throws IOException {
+        List<SpotifyItem.Artist> artists = new ArrayList<>();
+        aReader.beginObject();
+        while (aReader.hasNext()) {
+            if ("items".equals(aReader.nextName()) && aReader.peek() == JsonToken.BEGIN_ARRAY) {
+                aReader.beginArray();
+                while (aReader.hasNext()) {
+                    artists.add(readArtist(aReader));
+                }
+                aReader.endArray();
+            } else {
+                aReader.skipValue();
+            }
+        }
+        aReader.endObject();
+        return artists;
+    }
+
+    private static SpotifyItem.Artist readArtist(JsonReader aReader) throws IOException {
+        String name = null;
+        String id = null;
+        int popularity = 0;
+        List<Image> images = Collections.emptyList();
+
+        aReader.beginObject();
+        while (aReader.hasNext()) {
+            String field = aReader.nextName();
+            if (aReader.peek() == JsonToken.NULL) {
+                aReader.nextNull();
+            } else if ("name".equals(field)) {
+                name = aReader.nextString();
+            } else if ("id".equals(field)) {
+                id = aReader.nextString();
+            } else if ("popularity".equals(field)) {
+                popularity = aReader.nextInt();
+            } else if ("images".equals(field)) {
+                images = readImages(aReader);
+            } else {
+                aReader.skipValue(); // followers, genres, external_urls, href, type, uri
+            }
+        }
+        aReader.endObject();
+        // the id may come after the images, so they are indexed only now
+        AlbumImages.Variants variants = AlbumImages.resolveArtist(id, images);
+        return new SpotifyItem.Artist(name, variants.urlFor(AlbumImages.Size.THUMBNAIL), popularity, id);
+    }
+
+    private static SpotifyItem.Track readTrack(JsonReader aReader) throws IOException {
+        String name = null;
+        String previewUrl = null;
+        int popularity = 0;
+        String albumName = null;
+        String albumId = null;
+        List<Image> albumImages = Collections.emptyList();
+        AlbumImages.Variants indexed = null;
+
+        aReader.beginObject();
+        while (aReader.hasNext()) {
+            String field = aReader.nextName();
+            if (aReader.peek() == JsonToken.NULL) {
+                aReader.nextNull();
+            } else if ("name".equals(field)) {
+                name = aReader.nextString();
+            } else if ("preview_url".equals(field)) {
+                previewUrl = aReader.nextString();
+            } else if ("popularity".equals(field)) {
+                popularity = aReader.nextInt();
+            } else if ("album".equals(field)) {
+                aReader.beginObject();
+                while (aReader.hasNext()) {
+                    String albumField = aReader.nextName();
+                    if (aReader.peek() == JsonToken.NULL) {
+                        aReader.nextNull();
+                    } else if ("name".equals(albumField)) {
+                        albumName = aReader.nextString();
+                    } else if ("id".equals(albumField)) {
+                        albumId = aReader.nextString();
+                    } else if ("images".equals(albumField)) {
+                        // once an album is indexed, its images need not be read again. Spotify sends the id first
+                        indexed = AlbumImages.get(albumId);
+                        if (indexed != null) {
+                            aReader.skipValue();
+                        } else {
+                            albumImages = readImages(aReader);
+                        }
+                    } else {
+                        aReader.skipValue(); // available_markets, album_type, external_urls, ...
+                    }
+                }
+                aReader.endObject();
+            } else {
+                aReader.skipValue(); // artists, available_markets, external_ids, duration_ms, ...
+            }
+        }
+        aReader.endObject();
+        AlbumImages.Variants images = indexed != null ? indexed : AlbumImages.resolve(albumId, albumImages);
+        // the tracks mostly share a few albums, see StringPool
+        return new SpotifyItem.Track(name,
+                images.urlFor(AlbumImages.Size.LIST),
+                popularity, StringPool.intern(albumName), previewUrl,
+                images.urlFor(AlbumImages.Size.FULL_SCREEN),
+                PREVIEW_DURATION_MS, StringPool.intern(albumId));
+    }
+
+    private static List<Image> readImages(JsonReader aReader) throws IOException {
+        List<Image> images = new ArrayList<>(3);
+        aReader.beginArray();
+        while (aReader.hasNext()) {
+            Image image = new Image();
+            image.width = 0; // missing sizes must not break the image selection
+            image.height = 0;
+            aReader.beginObject();
+            while (aReader.hasNext()) {
+                String field = aReader.nextName();
+                if (aReader.peek() == JsonToken.NULL) {
+                    aReader.nextNull();
+                } else if ("url".equals(field)) {
+                    image.url = aReader.nextString();
+                } else if ("width".equals(field)) {
+                    image.width = aReader.nextInt();
+                } else if ("height".equals(field)) {
+                    image.height = aReader.nextInt();
+                } else {
+                    aReader.skipValue();
+                }
+            }
+            aReader.endObject();
+            images.add(image);
+        }
+        aReader.endArray();
+        return images;
+    }
+
+    private SpotifyJsonDecoder() {
+    } // cannot instantiate - static method helper class
+}
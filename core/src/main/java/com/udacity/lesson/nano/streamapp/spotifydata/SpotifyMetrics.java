@@ -0,0 +1,226 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency and payload metrics of the Spotify data layer, kept per endpoint.
+ * <p/>
+ * For every request we record how long it waited for a network thread, how long the server took to answer (until the
+ * headers are in), decoding the streamed body, ranking and trimming on the worker, and posting the result until the
+ * callback returned. Besides that the size of each response body, the errors by {@code SpotifyError.Kind} and the
+ * number of retries.
+ * <p/>
+ * Everything is lock-free and may be recorded from any thread. Read it in-process with {@link #toString()} or
+ * {@link #toJson()}, or dump it into a file with {@link #dumpTo(File)} to compare builds.
+ */
+public class SpotifyMetrics {
+
+    /**
+     * Histogram with a constant memory footprint: values are counted in buckets growing exponentially, four per power
+     * of two. So percentiles are off by 25% at most, which is plenty to spot a regression.
+     */
+    public static class Histogram {
+        private static final int SUB_BUCKETS = 4;
+        private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+        private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        // 0..3 get a bucket each, above that the two bits following the highest one pick the sub-bucket
+        private static int bucketOf(long aValue) {
+            if (aValue < SUB_BUCKETS) {
+                return (int) Math.max(0, aValue);
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(aValue);
+            int sub = (int) (aValue >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+            return (exponent - 1) * SUB_BUCKETS + sub;
+        }
+
+        // the largest value, that still falls into the bucket
+        private static long upperBoundOf(int aBucket) {
+            if (aBucket < SUB_BUCKETS) {
+                return aBucket;
+            }
+            int exponent = aBucket / SUB_BUCKETS + 1;
+            long sub = aBucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+        }
+
+        public void record(long aValue) {
+            mCounts.incrementAndGet(bucketOf(aValue));
+            mCount.incrementAndGet();
+            mSum.addAndGet(aValue);
+            long max;
+            while (aValue > (max = mMax.get()) && !mMax.compareAndSet(max, aValue)) {
+                // somebody else recorded a new max in between, try again
+            }
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        public long getMean() {
+            long count = mCount.get();
+            return count == 0 ? 0 : mSum.get() / count;
+        }
+
+        /**
+         * @param aPercentile e.g. 95 for the p95
+         * @return the value, that {@code aPercentile} percent of the recorded values do not exceed
+         */
+        public long getPercentile(double aPercentile) {
+            long count = mCount.get();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * aPercentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mCounts.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), mMax.get());
+                }
+            }
+            return mMax.get();
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("count", getCount());
+            json.addProperty("mean", getMean());
+            json.addProperty("p50", getPercentile(50));
+            json.addProperty("p95", getPercentile(95));
+            json.addProperty("p99", getPercentile(99));
+            json.addProperty("max", getMax());
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + getCount() + " p50=" + getPercentile(50) + " p95=" + getPercentile(95) +
+                    " p99=" + getPercentile(99) + " max=" + getMax();
+        }
+    }
+
+    /**
+     * The metrics of a single endpoint, all times in microseconds
+     */
+    public static class EndpointMetrics {
+        public final Histogram queueWaitUs = new Histogram();
+        public final Histogram networkUs = new Histogram();
+        public final Histogram decodeUs = new Histogram();
+        public final Histogram processUs = new Histogram();
+        public final Histogram deliveryUs = new Histogram();
+        public final Histogram responseBytes = new Histogram();
+        private final Map<SpotifyError.Kind, AtomicLong> mErrors = new EnumMap<>(SpotifyError.Kind.class);
+        private final AtomicLong mRetries = new AtomicLong();
+
+        EndpointMetrics() {
+            for (SpotifyError.Kind kind : SpotifyError.Kind.values()) {
+                mErrors.put(kind, new AtomicLong());
+            }
+        }
+
+        void recordError(SpotifyError.Kind aKind) {
+            mErrors.get(aKind).incrementAndGet();
+        }
+
+        public long getErrorCount(SpotifyError.Kind aKind) {
+            return mErrors.get(aKind).get();
+        }
+
+        void recordRetry() {
+            mRetries.incrementAndGet();
+        }
+
+        public long getRetryCount() {
+            return mRetries.get();
+        }
+
+        JsonObject toJson() {
+            JsonObject errors = new JsonObject();
+            for (Map.Entry<SpotifyError.Kind, AtomicLong> entry : mErrors.entrySet()) {
+                errors.addProperty(entry.getKey().name(), entry.getValue().get());
+            }
+            JsonObject json = new JsonObject();
+            json.add("queueWaitUs", queueWaitUs.toJson());
+            json.add("networkUs", networkUs.toJson());
+            json.add("decodeUs", decodeUs.toJson());
+            json.add("processUs", processUs.toJson());
+            json.add("deliveryUs", deliveryUs.toJson());
+            json.add("responseBytes", responseBytes.toJson());
+            json.add("errors", errors);
+            json.addProperty("retries", mRetries.get());
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return "queueWaitUs[" + queueWaitUs + "] networkUs[" + networkUs + "] decodeUs[" + decodeUs +
+                    "] processUs[" + processUs + "] deliveryUs[" + deliveryUs +
+                    "] responseBytes[" + responseBytes + "] errors" + mErrors + " retries=" + mRetries;
+        }
+    }
+
+    private final Map<String, EndpointMetrics> mEndpoints = new LinkedHashMap<>();
+
+    /**
+     * @return the metrics of the endpoint, e.g. {@code SpotifyResponseCache.ENDPOINT_SEARCH_ARTISTS}
+     */
+    public synchronized EndpointMetrics forEndpoint(String aEndpoint) {
+        EndpointMetrics metrics = mEndpoints.get(aEndpoint);
+        if (metrics == null) {
+            metrics = new EndpointMetrics();
+            mEndpoints.put(aEndpoint, metrics);
+        }
+        return metrics;
+    }
+
+    public synchronized JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        for (Map.Entry<String, EndpointMetrics> entry : mEndpoints.entrySet()) {
+            json.add(entry.getKey(), entry.getValue().toJson());
+        }
+        return json;
+    }
+
+    /**
+     * Writes the metrics as JSON into {@code aFile}, replacing what was there before
+     */
+    public void dumpTo(File aFile) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(aFile), "UTF-8");
+        try {
+            new GsonBuilder().setPrettyPrinting().create().toJson(toJson(), writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, EndpointMetrics> entry : mEndpoints.entrySet()) {
+            builder.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ranks {@code SpotifyItem}s: most popular first, equally popular ones by name. Items equal in both keep their order.
+ * <p/>
+ * Where only the best few of many items are wanted, e.g. the top tracks or the first rows of a search, a bounded
+ * selection is used instead of sorting everything: it keeps a heap of the best {@code k} items seen so far, which is
+ * O(n log k) and touches every item only once.
+ */
+public class SpotifyRanking {
+
+    /**
+     * The ranking order: most popular first, then by name
+     */
+    public static final Comparator<SpotifyItem> ORDER = new Comparator<SpotifyItem>() {
+        @Override
+        public int compare(SpotifyItem lhs, SpotifyItem rhs) {
+            if (lhs.popularity != rhs.popularity) {
+                return lhs.popularity > rhs.popularity ? -1 : 1;
+            }
+            if (lhs.name == null || rhs.name == null) {
+                return lhs.name == null ? (rhs.name == null ? 0 : 1) : -1; // nameless ones last
+            }
+            return String.CASE_INSENSITIVE_ORDER.compare(lhs.name, rhs.name);
+        }
+    };
+
+    /**
+     * @return the best {@code aLimit} items (or all of them, if there are less) in ranking order, unmodifiable
+     */
+    public static <T extends SpotifyItem> List<T> top(List<? extends T> aItems, int aLimit) {
+        int size = aItems.size();
+        if (aLimit <= 0 || size == 0) {
+            return Collections.emptyList();
+        }
+        Object[] items = aItems.toArray();
+        if (aLimit >= size) { // nothing to leave out, a plain (stable) sort is just as good
+            sort(items);
+            return asList(items);
+        }
+
+        // the heap holds the indices of the best items so far, the worst of them at the root
+        int[] heap = new int[aLimit];
+        for (int i = 0; i < aLimit; i++) {
+            heap[i] = i;
+        }
+        for (int i = aLimit / 2 - 1; i >= 0; i--) {
+            siftDown(items, heap, i, aLimit);
+        }
+        for (int i = aLimit; i < size; i++) {
+            if (ranksBefore(items, i, heap[0])) {
+                heap[0] = i;
+                siftDown(items, heap, 0, aLimit);
+            }
+        }
+        // taking out the worst one after the other fills the result from its end
+        Object[] best = new Object[aLimit];
+        for (int n = aLimit; n > 0; n--) {
+            best[n - 1] = items[heap[0]];
+            heap[0] = heap[n - 1];
+            siftDown(items, heap, 0, n - 1);
+        }
+        return asList(best);
+    }
+
+    /**
+     * Merges pages, that are each in ranking order, into a single ranked list. Only the first {@code aLimit} items are
+     * looked at, the rest of the pages is never touched. Equal items are taken from the earlier page first.
+     *
+     * @return the first {@code aLimit} items of the merged pages, unmodifiable
+     */
+    public static <T extends SpotifyItem> List<T> merge(List<? extends List<? extends T>> aRankedPages, int aLimit) {
+        int pages = aRankedPages.size();
+        int[] next = new int[pages]; // the head of each page
+        List<T> merged = new ArrayList<>();
+        // picking the best head is a linear scan, there are only ever a few pages at a time
+        while (merged.size() < aLimit) {
+            int bestPage = -1;
+            T best = null;
+            for (int page = 0; page < pages; page++) {
+                List<? extends T> items = aRankedPages.get(page);
+                if (next[page] < items.size()) {
+                    T head = items.get(next[page]);
+                    if (best == null || ORDER.compare(head, best) < 0) {
+                        best = head;
+                        bestPage = page;
+                    }
+                }
+            }
+            if (best == null) {
+                break; // all pages are used up
+            }
+            merged.add(best);
+            next[bestPage]++;
+        }
+        return Collections.unmodifiableList(merged);
+    }
+
+    // the earlier one wins a tie, that keeps the selection stable
+    private static boolean ranksBefore(Object[] aItems, int a, int b) {
+        int order = ORDER.compare((SpotifyItem) aItems[a], (SpotifyItem) aItems[b]);
+        return order < 0 || (order == 0 && a < b);
+    }
+
+    // restores the heap below aPosition: the worst item moves up to the root
+    private static void siftDown(Object[] aItems, int[] aHeap, int aPosition, int aSize) {
+        int position = aPosition;
+        int index = aHeap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= aSize) {
+                break;
+            }
+            if (child + 1 < aSize && ranksBefore(aItems, aHeap[child], aHeap[child + 1])) {
+                child++; // the worse of the two children
+            }
+            if (!ranksBefore(aItems, index, aHeap[child])) {
+                break;
+            }
+            aHeap[position] = aHeap[child];
+            position = child;
+        }
+        aHeap[position] = index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void sort(Object[] aItems) {
+        Arrays.sort(aItems, (Comparator<Object>) (Comparator<?>) ORDER);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> asList(Object[] aItems) {
+        return Collections.unmodifiableList((List<T>) Arrays.asList(aItems));
+    }
+
+    private SpotifyRanking() {
+    } // cannot instantiate - static method helper class
+}
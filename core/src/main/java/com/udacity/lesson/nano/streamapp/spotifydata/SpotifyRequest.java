@@ -0,0 +1,33 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+/**
+ * Handle of a single {@code queryArtist()} or {@code queryTopTracks()} call.
+ * <p/>
+ * Cancelling it guarantees the callback is not called anymore. If no other caller is attached to the same request,
+ * and it has not been sent yet, it is not sent at all - e.g. a search for a phrase the user has already typed past.
+ *
+ * @param <T> Type of the requested items
+ */
+public class SpotifyRequest<T extends SpotifyItem> {
+
+    final String key;
+    final SpotifyCallback<T> callback;
+    private final InFlightCalls mInFlightCalls;
+    private volatile boolean mCancelled;
+    volatile boolean staleDelivered; // stale results were posted, a failing refresh is not reported then
+
+    SpotifyRequest(String aKey, SpotifyCallback<T> aCallback, InFlightCalls aInFlightCalls) {
+        key = aKey;
+        callback = aCallback;
+        mInFlightCalls = aInFlightCalls;
+    }
+
+    public void cancel() {
+        mCancelled = true;
+        mInFlightCalls.detach(this);
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+}
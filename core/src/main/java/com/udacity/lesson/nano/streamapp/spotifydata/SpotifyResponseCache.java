@@ -0,0 +1,429 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache for the fully evaluated results of the Spotify requests.
+ * <p/>
+ * The first tier is a small in-memory LRU, bounded by entry count and by an estimate of the retained bytes. The second
+ * tier is a directory on disk that survives process death, bounded by its size in bytes. Every entry carries its own
+ * time-to-live. Expired entries are still handed out as stale for a while, so the caller can show them right away
+ * while refreshing them, only after that they count as a miss.
+ * <p/>
+ * Memory lookups are cheap and may be done from any thread, while {@link #getFromDisk(String)} and
+ * {@link #put(String, List, long)} do file I/O and must not be called from the main UI thread.
+ */
+public class SpotifyResponseCache {
+
+    public static final String ENDPOINT_SEARCH_ARTISTS = "search-artists";
+    public static final String ENDPOINT_TOP_TRACKS = "top-tracks";
+
+    private static final String FILE_SUFFIX = ".entry";
+
+    private final int mMaxEntries;
+    private long mMaxMemoryBytes; // guarded by mMemory
+    private final File mDiskDir;
+    private final long mMaxDiskBytes;
+    private final long mMaxStaleMs;
+
+    // access ordered, so iterating starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> mMemory = new LinkedHashMap<>(16, 0.75f, true);
+    private long mMemoryBytes;
+    private long mDiskBytes = -1; // lazily computed on the first write
+
+    private final AtomicLong mMemoryHits = new AtomicLong();
+    private final AtomicLong mDiskHits = new AtomicLong();
+    private final AtomicLong mStaleHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+    private final AtomicLong mExpirations = new AtomicLong();
+
+    private static class Entry {
+        final List<? extends SpotifyItem> items;
+        final long expiresAtMs;
+        final long bytes;
+
+        Entry(List<? extends SpotifyItem> aItems, long aExpiresAtMs) {
+            items = aItems;
+            expiresAtMs = aExpiresAtMs;
+            bytes = estimateBytes(aItems);
+        }
+
+        boolean isExpired(long aNowMs) {
+            return aNowMs >= expiresAtMs;
+        }
+    }
+
+    /**
+     * Result of a successful lookup
+     */
+    public static class Hit<T extends SpotifyItem> {
+        public final List<T> items;
+        public final boolean stale; // true, if the entry has outlived its time-to-live
+
+        Hit(List<T> aItems, boolean aStale) {
+            items = aItems;
+            stale = aStale;
+        }
+    }
+
+    /**
+     * @param aMaxEntries     maximum number of entries kept in memory
+     * @param aMaxMemoryBytes maximum (estimated) bytes retained by the entries in memory
+     * @param aDiskDir        directory for the persistent tier, or null to only cache in memory
+     * @param aMaxDiskBytes   maximum size of all files in {@code aDiskDir}
+     * @param aMaxStaleMs     how long an entry is still handed out as stale after it expired
+     */
+    public SpotifyResponseCache(int aMaxEntries, long aMaxMemoryBytes, File aDiskDir, long aMaxDiskBytes,
+                                long aMaxStaleMs) {
+        mMaxEntries = aMaxEntries;
+        mMaxMemoryBytes = aMaxMemoryBytes;
+        mDiskDir = aDiskDir;
+        mMaxDiskBytes = aMaxDiskBytes;
+        mMaxStaleMs = aMaxStaleMs;
+    }
+
+    /**
+     * Builds the cache key for a page of an artist search. Queries are normalized, so "Coldplay " and "coldplay"
+     * share the same entry.
+     */
+    public static String searchArtistsKey(String aQuery, String aCountry, int aOffset, int aLimit) {
+        String query = aQuery == null ? "" : aQuery.trim().toLowerCase(Locale.US);
+        return key(ENDPOINT_SEARCH_ARTISTS, query + '@' + aOffset + '+' + aLimit, aCountry);
+    }
+
+    /**
+     * Builds the cache key for the top tracks of an artist. Spotify IDs are case sensitive, so they are taken as-is.
+     */
+    public static String topTracksKey(String aArtistId, String aCountry) {
+        return key(ENDPOINT_TOP_TRACKS, aArtistId, aCountry);
+    }
+
+    private static String key(String aEndpoint, String aQuery, String aCountry) {
+        return aEndpoint + '|' + aQuery + '|' + (aCountry == null ? "" : aCountry);
+    }
+
+    /**
+     * @return the cached items if a fresh or stale entry is held in memory, otherwise null
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends SpotifyItem> Hit<T> getFromMemory(String aKey) {
+        synchronized (mMemory) {
+            Entry entry = mMemory.get(aKey);
+            if (entry != null) {
+                long now = System.currentTimeMillis();
+                if (!entry.isExpired(now)) {
+                    mMemoryHits.incrementAndGet();
+                    return new Hit<>((List<T>) entry.items, false);
+                }
+                if (now < entry.expiresAtMs + mMaxStaleMs) {
+                    mStaleHits.incrementAndGet();
+                    return new Hit<>((List<T>) entry.items, true);
+                }
+                mExpirations.incrementAndGet();
+                removeFromMemory(aKey);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks the entry up in the persistent tier and promotes it back to memory. Every call that returns null is
+     * counted as a miss, so it should be preceded by a {@link #getFromMemory(String)} call.
+     *
+     * @return the cached items if a fresh or stale entry is found on disk, otherwise null
+     */
+    public <T extends SpotifyItem> Hit<T> getFromDisk(String aKey) {
+        File file = fileFor(aKey);
+        if (file == null || !file.exists()) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            String key = in.readUTF();
+            long expiresAtMs = in.readLong();
+            if (!aKey.equals(key)) { // hash collision, leave the other entry alone
+                mMisses.incrementAndGet();
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            if (now >= expiresAtMs + mMaxStaleMs) {
+                mExpirations.incrementAndGet();
+                mMisses.incrementAndGet();
+                deleteFile(file);
+                return null;
+            }
+            List<T> items = SpotifyItemCodec.readItems(in);
+            putInMemory(aKey, new Entry(items, expiresAtMs));
+            boolean stale = now >= expiresAtMs;
+            (stale ? mStaleHits : mDiskHits).incrementAndGet();
+            return new Hit<>(items, stale);
+        } catch (IOException | RuntimeException e) {
+            // corrupt or written by an older version, either way we cannot use it anymore. must not escape: the
+            // caller has a call in flight, that would never complete
+            mMisses.incrementAndGet();
+            deleteFile(file);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Stores the items in memory and on disk. Empty results are not cached, as they might as well be caused by a
+     * failure.
+     *
+     * @param aTtlMs time in milliseconds the entry is considered fresh
+     */
+    public void put(String aKey, List<? extends SpotifyItem> aItems, long aTtlMs) {
+        if (aItems.isEmpty()) {
+            return;
+        }
+        long expiresAtMs = System.currentTimeMillis() + aTtlMs;
+        putInMemory(aKey, new Entry(aItems, expiresAtMs));
+        writeToDisk(aKey, aItems, expiresAtMs);
+    }
+
+    /**
+     * Drops every entry from memory, the persistent tier is left untouched
+     */
+    public void clearMemory() {
+        synchronized (mMemory) {
+            mMemory.clear();
+            mMemoryBytes = 0;
+        }
+    }
+
+    /**
+     * Changes the bytes the entries in memory may retain, e.g. to give memory back to the system. The least recently
+     * used entries beyond it are evicted right away.
+     */
+    public void setMaxMemoryBytes(long aMaxMemoryBytes) {
+        synchronized (mMemory) {
+            mMaxMemoryBytes = aMaxMemoryBytes;
+            evictFromMemory(null);
+        }
+    }
+
+    public long getMaxMemoryBytes() {
+        synchronized (mMemory) {
+            return mMaxMemoryBytes;
+        }
+    }
+
+    private void putInMemory(String aKey, Entry aEntry) {
+        synchronized (mMemory) {
+            removeFromMemory(aKey);
+            mMemory.put(aKey, aEntry);
+            mMemoryBytes += aEntry.bytes;
+            evictFromMemory(aEntry);
+        }
+    }
+
+    // evicts the least recently used entries until the limits are kept, but never aKeep. holding mMemory
+    private void evictFromMemory(Entry aKeep) {
+        Iterator<Map.Entry<String, Entry>> it = mMemory.entrySet().iterator();
+        while ((mMemory.size() > mMaxEntries || mMemoryBytes > mMaxMemoryBytes) && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            if (eldest == aKeep) {
+                break; // never evict what we have just added
+            }
+            it.remove();
+            mMemoryBytes -= eldest.bytes;
+            mEvictions.incrementAndGet();
+        }
+    }
+
+    private void removeFromMemory(String aKey) {
+        Entry old = mMemory.remove(aKey);
+        if (old != null) {
+            mMemoryBytes -= old.bytes;
+        }
+    }
+
+    private synchronized void writeToDisk(String aKey, List<? extends SpotifyItem> aItems, long aExpiresAtMs) {
+        File file = fileFor(aKey);
+        if (file == null || (!mDiskDir.isDirectory() && !mDiskDir.mkdirs())) {
+            return;
+        }
+        if (mDiskBytes < 0) {
+            mDiskBytes = 0;
+            for (File f : listEntries()) {
+                mDiskBytes += f.length();
+            }
+        }
+        long oldLength = file.length();
+
+        // write to a temporary file first, so a crash never leaves a half written entry behind
+        File tmp = new File(mDiskDir, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeUTF(aKey);
+            out.writeLong(aExpiresAtMs);
+            SpotifyItemCodec.writeItems(out, aItems);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                deleteFile(tmp);
+                return;
+            }
+        } catch (IOException e) {
+            close(out);
+            deleteFile(tmp);
+            return;
+        }
+        mDiskBytes += file.length() - oldLength;
+        trimDisk();
+    }
+
+    // deletes the oldest entries until we are within the disk budget again
+    private void trimDisk() {
+        if (mDiskBytes <= mMaxDiskBytes) {
+            return;
+        }
+        File[] files = listEntries();
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && mDiskBytes > mMaxDiskBytes; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                mDiskBytes -= length;
+                mEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    private File[] listEntries() {
+        File[] files = mDiskDir.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        int count = 0;
+        for (File f : files) {
+            if (f.getName().endsWith(FILE_SUFFIX)) {
+                files[count++] = f;
+            }
+        }
+        return Arrays.copyOf(files, count);
+    }
+
+    private File fileFor(String aKey) {
+        if (mDiskDir == null) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(aKey.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2 + FILE_SUFFIX.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return new File(mDiskDir, name.append(FILE_SUFFIX).toString());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return null; // both are always available on Android
+        }
+    }
+
+    private synchronized void deleteFile(File aFile) {
+        long length = aFile.length();
+        if (aFile.delete() && mDiskBytes >= 0 && aFile.getName().endsWith(FILE_SUFFIX)) {
+            mDiskBytes -= length;
+        }
+    }
+
+    private static void close(Closeable aCloseable) {
+        if (aCloseable != null) {
+            try {
+                aCloseable.close();
+            } catch (IOException e) {
+                // nothing left we could do
+            }
+        }
+    }
+
+    // rough estimate of the heap retained by a result list: object headers, fields and the string contents
+    static long estimateBytes(List<? extends SpotifyItem> aItems) {
+        long bytes = 16 + 4L * aItems.size();
+        for (SpotifyItem item : aItems) {
+            bytes += 32 + stringBytes(item.name) + stringBytes(item.imageUrl);
+            if (item instanceof SpotifyItem.Artist) {
+                bytes += stringBytes(((SpotifyItem.Artist) item).id);
+            } else if (item instanceof SpotifyItem.Track) {
+                SpotifyItem.Track track = (SpotifyItem.Track) item;
+                bytes += stringBytes(track.albumName) + stringBytes(track.trackUrl) + stringBytes(track.largeImageUrl) +
+                        stringBytes(track.albumId);
+            }
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String aValue) {
+        return aValue == null ? 0 : 40 + 2L * aValue.length();
+    }
+
+    public Stats getStats() {
+        synchronized (mMemory) {
+            return new Stats(mMemoryHits.get(), mDiskHits.get(), mStaleHits.get(), mMisses.get(), mEvictions.get(),
+                    mExpirations.get(), mMemory.size(), mMemoryBytes);
+        }
+    }
+
+    /**
+     * Snapshot of the cache counters
+     */
+    public static class Stats {
+        public final long memoryHits;
+        public final long diskHits;
+        public final long staleHits;
+        public final long misses;
+        public final long evictions;
+        public final long expirations;
+        public final int memoryEntries;
+        public final long memoryBytes;
+
+        Stats(long aMemoryHits, long aDiskHits, long aStaleHits, long aMisses, long aEvictions, long aExpirations,
+              int aMemoryEntries, long aMemoryBytes) {
+            memoryHits = aMemoryHits;
+            diskHits = aDiskHits;
+            staleHits = aStaleHits;
+            misses = aMisses;
+            evictions = aEvictions;
+            expirations = aExpirations;
+            memoryEntries = aMemoryEntries;
+            memoryBytes = aMemoryBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + memoryHits + "/" + diskHits + "/" + staleHits + " (memory/disk/stale), misses=" + misses +
+                    ", evictions=" + evictions + ", expirations=" + expirations +
+                    ", memory=" + memoryEntries + " entries/" + memoryBytes + " bytes";
+        }
+    }
+}
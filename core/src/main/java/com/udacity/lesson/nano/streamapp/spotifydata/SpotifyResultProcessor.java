@@ -0,0 +1,180 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.AlbumSimple;
+import kaaes.spotify.webapi.android.models.Artist;
+import kaaes.spotify.webapi.android.models.ArtistsPager;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.Tracks;
+
+/**
+ * Turns the raw Spotify payloads into the finished lists of {@code SpotifyItem}s our Views display: mapping,
+ * picking the images, ranking by popularity and capping the result.
+ * <p/>
+ * There are two ways in: the response body can be decoded straight into {@code SpotifyItem}s by the streaming
+ * {@code SpotifyJsonDecoder}, or an already built Retrofit/Gson object graph can be mapped. The {@code SpotifyRequester}
+ * uses the former, as it skips all the fields we never look at.
+ * <p/>
+ * None of this is cheap for large result pages, so the {@code SpotifyRequester} never calls it from the main UI
+ * thread. The returned lists are unmodifiable, so they can safely be handed over to another thread.
+ */
+class SpotifyResultProcessor {
+
+    // cap the top track list to 10 elements at most
+    static final int MAX_TOP_TRACKS = 10;
+
+    // unfortunately no Java8 atm :-(   https://discussions.udacity.com/t/java-8-for-android-development/20578
+    private interface ImageMatcher {
+        /**
+         * @return true, if aImage should be preferred aOverThisImage
+         */
+        boolean preferImage(Image aImage, Image aOverThisImage);
+    }
+
+    // for the artists we use the smallest image we can find
+    private static final ImageMatcher smallestMatcher = new ImageMatcher() {
+        @Override
+        public boolean preferImage(Image aImage, Image aOverThisImage) {
+            // simple size check, we use the smallest one to reduce amount of data transferred over
+            // the network. still could be slightly incorrect, if the smaller image had an uncompressed
+            // format like BMP while a larger one was jpg or png
+            return aImage.width * aImage.height < aOverThisImage.width * aOverThisImage.height;
+        }
+    };
+
+    // for the track list we use a small image, but prefer one with 200x200
+    private static final ImageMatcher thumbnailMatcher = new ImageMatcher() {
+        @Override
+        public boolean preferImage(Image aImage, Image aOverThisImage) {
+            /*
+             * Quote from the "Spotify Streamer, Stage 1: Implementation Guide"
+             *  "Album art thumbnail (large (640px for Now Playing screen) and small (200px for list items)).
+             *   If the image size does not exist in the API response, you are free to choose whatever size is
+             *   available.)"
+             */
+            if (aImage.width == 200 && aImage.height == 200) {
+                return true;  // this wins if we have a 200x200 at hand
+            }
+            if (aOverThisImage.width == 200 && aOverThisImage.height == 200) {
+                return false; // the other image wins if a 200x200 was already found
+            }
+            // otherwise keep the smaller one
+            return aImage.width * aImage.height < aOverThisImage.width * aOverThisImage.height;
+        }
+    };
+
+    private static final ImageMatcher largestMatcher = new ImageMatcher() {
+        @Override
+        public boolean preferImage(Image aImage, Image aOverThisImage) {
+            // find the largest
+            return aImage.width * aImage.height > aOverThisImage.width * aOverThisImage.height;
+        }
+    };
+
+    private static Image findBestImage(List<Image> images, ImageMatcher aMatcher) {
+        Image image = null;
+        for (Image i : images) {
+            if (image == null || aMatcher.preferImage(i, image)) {
+                image = i;
+            }
+        }
+        return image;
+    }
+
+    // the variants resolved by AlbumImages follow, all null if there are no images at all.
+    // the smallest one, also shown next to an artist
+    static Image findSmallestImage(List<Image> aImages) {
+        return findBestImage(aImages, smallestMatcher);
+    }
+
+    // shown next to a track
+    static Image findListImage(List<Image> aImages) {
+        return findBestImage(aImages, thumbnailMatcher);
+    }
+
+    // shown by the player
+    static Image findFullScreenImage(List<Image> aImages) {
+        return findBestImage(aImages, largestMatcher);
+    }
+
+    /**
+     * Decodes a {@code /v1/search?type=artist} response body, without building the full object graph
+     *
+     * @return the artists of the page, in the order of the response
+     */
+    List<SpotifyItem.Artist> decodeArtists(InputStream aBody) throws IOException {
+        return SpotifyJsonDecoder.decodeArtists(aBody);
+    }
+
+    /**
+     * Decodes a {@code /v1/artists/{id}/top-tracks} response body, without building the full object graph
+     *
+     * @return the tracks, in the order of the response
+     */
+    List<SpotifyItem.Track> decodeTopTracks(InputStream aBody) throws IOException {
+        return SpotifyJsonDecoder.decodeTopTracks(aBody);
+    }
+
+    /**
+     * @return the artists, most popular first
+     */
+    List<SpotifyItem.Artist> rankArtists(List<SpotifyItem.Artist> aArtists) {
+        return SpotifyRanking.top(aArtists, aArtists.size());
+    }
+
+    /**
+     * @return at most {@link #MAX_TOP_TRACKS} tracks, most popular first
+     */
+    List<SpotifyItem.Track> rankTopTracks(List<SpotifyItem.Track> aTracks) {
+        // the result does not keep the whole decoded list alive
+        return SpotifyRanking.top(aTracks, MAX_TOP_TRACKS);
+    }
+
+    /**
+     * Maps the Retrofit/Gson object graph of an artist search
+     *
+     * @return the artists of the first page, most popular first
+     */
+    List<SpotifyItem.Artist> toArtists(ArtistsPager aArtistsPager) {
+        Pager<Artist> artistPager = aArtistsPager.artists;
+        List<SpotifyItem.Artist> list = new ArrayList<>(artistPager.items.size());
+        for (Artist artist : artistPager.items) {
+            AlbumImages.Variants images = AlbumImages.resolveArtist(artist.id, artist.images);
+            list.add(new SpotifyItem.Artist(artist.name,
+                    images.urlFor(AlbumImages.Size.THUMBNAIL),
+                    artist.popularity,
+                    artist.id));
+        }
+        return rankArtists(list);
+    }
+
+    /**
+     * Maps the Retrofit/Gson object graph of the top tracks of an artist
+     *
+     * @return at most {@link #MAX_TOP_TRACKS} tracks, most popular first
+     */
+    List<SpotifyItem.Track> toTopTracks(Tracks aTracks) {
+        List<SpotifyItem.Track> list = new ArrayList<>(aTracks.tracks.size());
+        for (Track track : aTracks.tracks) {
+            AlbumSimple album = track.album;
+
+            // this could be a Settings Option, e.g. if you were able to log in
+            // using a real account
+            int duration = 30000; // (int)track.duration_ms;
+            String url = track.preview_url;
+            AlbumImages.Variants images = AlbumImages.resolve(album.id, album.images);
+            list.add(new SpotifyItem.Track(track.name,
+                    images.urlFor(AlbumImages.Size.LIST),
+                    track.popularity, album.name, url,
+                    images.urlFor(AlbumImages.Size.FULL_SCREEN),
+                    duration, album.id));
+        }
+        return rankTopTracks(list);
+    }
+}
@@ -0,0 +1,27 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.util.Map;
+
+import retrofit.client.Response;
+import retrofit.http.GET;
+import retrofit.http.Path;
+import retrofit.http.Query;
+import retrofit.http.QueryMap;
+import retrofit.http.Streaming;
+
+/**
+ * The two Spotify endpoints we query, mirroring {@code kaaes.spotify.webapi.android.SpotifyService}.
+ * <p/>
+ * Instead of letting Gson convert the response into the full object graph, the raw body is handed out as a stream, so
+ * the {@code SpotifyJsonDecoder} can pick out the few fields we need.
+ */
+interface SpotifyStreamingService {
+
+    @GET("/search?type=artist")
+    @Streaming
+    Response searchArtists(@Query("q") String aQuery, @Query("offset") int aOffset, @Query("limit") int aLimit);
+
+    @GET("/artists/{id}/top-tracks")
+    @Streaming
+    Response getArtistTopTrack(@Path("id") String aArtistId, @QueryMap Map<String, Object> aOptions);
+}
@@ -0,0 +1,39 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Shares one instance of equal strings between {@code SpotifyItem}s.
+ * <p/>
+ * The tracks of an artist mostly come from a few albums, so the same album name and image URLs show up again and again
+ * - in every response, every cache entry and every {@code Parcel} round trip. Decoding them through the pool keeps a
+ * single copy of each alive.
+ * <p/>
+ * Unlike {@code String.intern()}, the pool only holds on to strings weakly, so they are collected along with the last
+ * item using them.
+ */
+class StringPool {
+
+    private static final Map<String, WeakReference<String>> sPool = new WeakHashMap<>();
+
+    /**
+     * @return the pooled instance equal to {@code aValue}, or {@code aValue} itself if there is none yet
+     */
+    static synchronized String intern(String aValue) {
+        if (aValue == null) {
+            return null;
+        }
+        WeakReference<String> ref = sPool.get(aValue);
+        String pooled = ref != null ? ref.get() : null;
+        if (pooled == null) {
+            sPool.put(aValue, new WeakReference<>(aValue));
+            pooled = aValue;
+        }
+        return pooled;
+    }
+
+    private StringPool() {
+    } // cannot instantiate - static method helper class
+}
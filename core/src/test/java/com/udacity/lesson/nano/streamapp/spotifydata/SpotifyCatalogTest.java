@@ -0,0 +1,95 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Searching the offline catalog, and reading it back from disk
+ */
+public class SpotifyCatalogTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("catalog-test", null);
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static SpotifyItem.Artist artist(String aName, int aPopularity) {
+        return new SpotifyItem.Artist(aName, null, aPopularity, "id:" + aName);
+    }
+
+    private static String names(List<SpotifyItem.Artist> aArtists) {
+        StringBuilder names = new StringBuilder();
+        for (SpotifyItem.Artist artist : aArtists) {
+            names.append(names.length() > 0 ? "," : "").append(artist.name);
+        }
+        return names.toString();
+    }
+
+    @Test
+    public void testSearchMatchesWordPrefixes() {
+        SpotifyCatalog catalog = new SpotifyCatalog(null);
+        catalog.add(Arrays.asList(artist("The Beatles", 90), artist("Beat Happening", 40),
+                artist("Beyonc\u00e9", 95), artist("Abbey Lincoln", 30)));
+
+        assertEquals("Beyonc\u00e9,The Beatles,Beat Happening", names(catalog.searchArtists("be", 10)));
+        assertEquals("The Beatles", names(catalog.searchArtists("the BEAT", 10)));
+        assertEquals("Beyonc\u00e9", names(catalog.searchArtists("beyonce", 10)));
+        assertEquals("", names(catalog.searchArtists("bey lin", 10)));
+        assertEquals("Beyonc\u00e9", names(catalog.searchArtists("b", 1)));
+    }
+
+    @Test
+    public void testArtistsAndTracksAreIndexedApart() {
+        SpotifyCatalog catalog = new SpotifyCatalog(null);
+        catalog.add(Arrays.asList(artist("Adele", 90)));
+        catalog.add(Arrays.asList(new SpotifyItem.Track("Hello", null, 80, "25", null, null, 295000, null)));
+
+        assertEquals("Adele", names(catalog.searchArtists("ade", 10)));
+        assertEquals("", names(catalog.searchArtists("hel", 10)));
+        assertEquals(1, catalog.searchTracks("hel", 10).size());
+        assertEquals("Hello", catalog.searchTracks("hel", 10).get(0).name);
+        assertEquals(0, catalog.searchTracks("ade", 10).size());
+    }
+
+    @Test
+    public void testItemsAreUpdatedAndPersisted() {
+        SpotifyCatalog catalog = new SpotifyCatalog(file);
+        catalog.add(Arrays.asList(artist("Blur", 50), artist("Oasis", 60)));
+        catalog.add(Arrays.asList(artist("Blur", 70)));
+        assertEquals(2, catalog.getArtistCount());
+
+        SpotifyCatalog loaded = new SpotifyCatalog(file);
+        loaded.load();
+        assertEquals(2, loaded.getArtistCount());
+        assertEquals(70, loaded.searchArtists("blur", 10).get(0).popularity);
+    }
+
+    @Test
+    public void testUnloadedItemsComeBackFromDisk() {
+        SpotifyCatalog catalog = new SpotifyCatalog(file);
+        catalog.add(Arrays.asList(artist("Blur", 50), artist("Oasis", 60)));
+        catalog.unload();
+        assertEquals(0, catalog.getArtistCount());
+
+        catalog.add(Arrays.asList(artist("Blur", 70))); // added while unloaded, newer than the file
+        catalog.load();
+        assertEquals(2, catalog.getArtistCount());
+        assertEquals(70, catalog.searchArtists("blur", 10).get(0).popularity);
+    }
+}
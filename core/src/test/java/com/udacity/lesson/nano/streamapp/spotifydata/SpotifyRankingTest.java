@@ -0,0 +1,56 @@
+package com.udacity.lesson.nano.streamapp.spotifydata;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The bounded selection and the merge have to agree with a plain stable sort
+ */
+public class SpotifyRankingTest {
+
+    private static List<SpotifyItem.Artist> createArtists(Random aRandom, int aCount) {
+        List<SpotifyItem.Artist> artists = new ArrayList<>(aCount);
+        for (int i = 0; i < aCount; i++) {
+            // few distinct values, so there are lots of ties. some without a name
+            String name = aRandom.nextInt(5) == 0 ? null : "artist " + aRandom.nextInt(5);
+            artists.add(new SpotifyItem.Artist(name, null, aRandom.nextInt(5), "id" + i));
+        }
+        return artists;
+    }
+
+    private static List<SpotifyItem.Artist> sortAndTrim(List<SpotifyItem.Artist> aArtists, int aLimit) {
+        List<SpotifyItem.Artist> sorted = new ArrayList<>(aArtists);
+        Collections.sort(sorted, SpotifyRanking.ORDER);
+        return sorted.subList(0, Math.min(aLimit, sorted.size()));
+    }
+
+    @Test
+    public void testTopIsStableSortTrimmed() {
+        Random random = new Random(42);
+        for (int round = 0; round < 1000; round++) {
+            List<SpotifyItem.Artist> artists = createArtists(random, random.nextInt(60));
+            int limit = random.nextInt(70);
+            assertEquals(sortAndTrim(artists, limit), SpotifyRanking.top(artists, limit));
+        }
+    }
+
+    @Test
+    public void testMergeTakesEarlierPageFirst() {
+        Random random = new Random(7);
+        for (int round = 0; round < 100; round++) {
+            List<SpotifyItem.Artist> first = sortAndTrim(createArtists(random, random.nextInt(30)), 30);
+            List<SpotifyItem.Artist> second = sortAndTrim(createArtists(random, random.nextInt(30)), 30);
+            List<SpotifyItem.Artist> all = new ArrayList<>(first);
+            all.addAll(second);
+            int limit = random.nextInt(70);
+            assertEquals(sortAndTrim(all, limit), SpotifyRanking.merge(Arrays.asList(first, second), limit));
+        }
+    }
+}